@@ -0,0 +1,160 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import jenkins.plugins.xunit.tc11.mht.MHTEntry;
+
+/**
+ * Exports pictures (e.g. screenshots of errors) stored in a MHT file into a directory. Entry data is streamed into the files, so pictures are never
+ * held in memory completely. Pictures that turn out not to be needed are removed by {@link #retain(Collection)}.
+ */
+final class PictureExporter {
+
+  private static final String CONTENT_TYPE_IMAGE = "image/";
+  /**
+   * TestComplete uses GIF images only for the icons of the log viewer
+   */
+  private static final String CONTENT_TYPE_GIF = "image/gif";
+
+  private static final Logger LOGGER = Logger.getLogger(PictureExporter.class.getName());
+
+  private final File dir;
+  private final Map<String, File> exported = new ConcurrentHashMap<>();
+
+  /**
+   * Creates an exporter into a new directory. Existing files are never touched: if the given directory exists already (e.g. left by an earlier
+   * conversion) a counter is appended to its name, e.g. <i>report-pictures-1</i>.
+   *
+   * @param dir directory the pictures are exported into
+   * @throws IOException if the directory can not be created
+   */
+  PictureExporter(File dir) throws IOException {
+    FileUtils.forceMkdir(dir.getAbsoluteFile().getParentFile());
+    File newDir = dir;
+    for (int i = 1;; i++) {
+      try {
+        Files.createDirectory(newDir.toPath());
+        break;
+      } catch (FileAlreadyExistsException e) {
+        newDir = new File(dir.getPath() + "-" + i);
+      }
+    }
+    this.dir = newDir;
+  }
+
+  /**
+   * @return the directory the pictures are exported into
+   */
+  File getDirectory() {
+    return dir;
+  }
+
+  /**
+   * Checks whether the given entry is a picture that may be exported.
+   *
+   * @param entry the entry to check
+   * @return <code>true</code> if the entry is an image but no log viewer icon
+   */
+  static boolean isPicture(MHTEntry entry) {
+    String contentType = entry.getContentType();
+    return contentType != null && contentType.startsWith(CONTENT_TYPE_IMAGE) && !CONTENT_TYPE_GIF.equals(contentType);
+  }
+
+  /**
+   * Writes the data of a picture into a file named after the entry. If several entries share the same name only the first one is exported. Entries
+   * whose name would lead out of the directory (e.g. <i>../picture.png</i>) are not exported.
+   *
+   * @param entry the picture entry
+   * @param data stream of entry data, read completely but not closed
+   * @return the entry
+   * @throws IOException if an I/O error occurs
+   */
+  MHTEntry export(MHTEntry entry, InputStream data) throws IOException {
+    Path dirPath = dir.toPath().toAbsolutePath().normalize();
+    Path outPath;
+    try {
+      outPath = dirPath.resolve(entry.getName()).normalize();
+    } catch (InvalidPathException e) {
+      outPath = dirPath;
+    }
+    if (!outPath.startsWith(dirPath) || outPath.equals(dirPath)) {
+      LOGGER.log(Level.WARNING, "Picture ''{0}'' not exported, its name is no file name within directory ''{1}''", new Object[] {entry.getName(), dir});
+      return entry;
+    }
+    Files.createDirectories(outPath.getParent());
+    File out = outPath.toFile();
+    try (FileChannel channel = FileChannel.open(out.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      channel.transferFrom(Channels.newChannel(data), 0, Long.MAX_VALUE);
+    } catch (FileAlreadyExistsException e) {
+      return entry;
+    }
+    exported.put(entry.getName(), out);
+    return entry;
+  }
+
+  /**
+   * Returns the file a picture has been exported to.
+   *
+   * @param name name of the picture entry
+   * @return the file or <code>null</code> if no such picture has been exported
+   */
+  File getFile(String name) {
+    return exported.get(name);
+  }
+
+  /**
+   * Deletes all exported pictures but the given ones, and the directory if no picture is left.
+   *
+   * @param names names of the picture entries to keep
+   */
+  void retain(Collection<String> names) {
+    exported.entrySet().removeIf(picture -> {
+      if (names.contains(picture.getKey())) {
+        return false;
+      }
+      FileUtils.deleteQuietly(picture.getValue());
+      return true;
+    });
+    if (exported.isEmpty()) {
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+}
@@ -23,20 +23,30 @@
  */
 package jenkins.plugins.xunit.tc11;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Collection;
+import java.io.InputStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.io.IOUtils;
 import org.jenkinsci.lib.dtkit.model.InputType;
 import org.jenkinsci.lib.dtkit.model.InputMetricXSL;
 import org.jenkinsci.lib.dtkit.model.OutputMetric;
@@ -48,17 +58,22 @@ import org.jenkinsci.plugins.xunit.types.model.JUnitModel;
 
 import org.json.JSONObject;
 
-import com.google.common.io.Files;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 
+import jenkins.plugins.xunit.tc11.json.CallStackFrame;
+import jenkins.plugins.xunit.tc11.json.EntryStore;
 import jenkins.plugins.xunit.tc11.json.MyUtils;
+import jenkins.plugins.xunit.tc11.json.SpillingEntryStore;
 import jenkins.plugins.xunit.tc11.json.TCLog;
 import jenkins.plugins.xunit.tc11.json.TCLogItem;
 
@@ -83,6 +98,28 @@ public class TestCompleteInputMetric extends InputMetricXSL {
   private final static String CONTENT_TYPE_PLAIN = "text/plain";
   private final static String CONTENT_TYPE_JAVASCRIPT = "application/javascript";
   private final static String CONTENT_TYPE_XML = "text/xml";
+  /**
+   * Entry of JSON logs holding the tree of log items
+   */
+  private final static String ROOT_JS = "_root.js";
+  /**
+   * Entry of XML logs holding the tree of log items
+   */
+  private final static String ROOT_XML = "root.xml";
+
+  /**
+   * Format of the log stored in a MHT file, recognized by its root entry
+   */
+  private enum LogFormat {
+    /**
+     * TestComplete 11 and later: JavaScript files holding JSON data
+     */
+    JSON,
+    /**
+     * Older TestComplete versions: XML files transformed by XSL
+     */
+    XML
+  }
   /**
    * Base URL links inside MHT and XML files refer to
    */
@@ -148,87 +185,422 @@ public class TestCompleteInputMetric extends InputMetricXSL {
   }
 
   /**
-   * This method extracts all XML files inside a MHT file produced by TestComplete/TestExecute into a temporary directory and returns a reference to such
-   * directory.
+   * System property that defines the maximum number of MHT entries decoded at the same time, as well as the maximum number of test log items created
+   * (their log files parsed) at the same time. Defaults to the number of available processors.
+   */
+  public final static String PROPERTY_PARALLELISM = TestCompleteInputMetric.class.getName() + ".parallelism";
+
+  /**
+   * System property that defines the number of buffers read ahead on a background thread while MHT data is decoded. Defaults to 0, meaning no read
+   * ahead. Use 2 or more on slow or network mounted workspaces, see {@link ReadAheadInputStream}.
+   */
+  public final static String PROPERTY_READ_AHEAD_DEPTH = TestCompleteInputMetric.class.getName() + ".readAheadDepth";
+
+  /**
+   * System property that defines the size in bytes of every buffer read ahead. Defaults to 1 MB.
+   */
+  public final static String PROPERTY_READ_AHEAD_BUFFER_SIZE = TestCompleteInputMetric.class.getName() + ".readAheadBufferSize";
+
+  /**
+   * System property that defines where extracted MHT entries are kept: <i>HEAP</i>, <i>OFF_HEAP</i> or <i>DISK</i> (see
+   * {@link SpillingEntryStore.Backend}). By default it is chosen for every conversion by the size of the MHT file and the free heap.
+   */
+  public final static String PROPERTY_EXTRACTION_BACKEND = TestCompleteInputMetric.class.getName() + ".extractionBackend";
+
+  /**
+   * System property that defines the maximum number of bytes of extracted MHT entries kept in memory. Entries are spilled to disk once exceeded, and
+   * MHT files bigger than that are extracted to disk right away. Defaults to 256 MB.
+   */
+  public final static String PROPERTY_MAX_MEMORY_SIZE = TestCompleteInputMetric.class.getName() + ".maxMemorySize";
+
+  /**
+   * System property that defines the maximum number of bytes of direct memory (see <i>-XX:MaxDirectMemorySize</i>) extracted MHT entries may use
+   * when kept off the heap. Direct memory used already by other direct buffers is deducted. Defaults to {@link #PROPERTY_MAX_MEMORY_SIZE}.
+   */
+  public final static String PROPERTY_MAX_DIRECT_MEMORY_SIZE = TestCompleteInputMetric.class.getName() + ".maxDirectMemorySize";
+
+  /**
+   * System property that defines the size in bytes from which plain MHT files are read memory mapped instead of into heap buffers (see
+   * {@link MHTArchive#MHTArchive(File, boolean)}). Defaults to 1 GB, a negative value disables memory mapping. Note that a mapping can't be released
+   * once the file has been converted, it lasts until garbage collected. On Windows the MHT file stays locked (can't be deleted or overwritten) until
+   * then.
+   */
+  public final static String PROPERTY_MEMORY_MAPPED_SIZE = TestCompleteInputMetric.class.getName() + ".memoryMappedSize";
+
+  /**
+   * System property that enables the export of pictures (e.g. screenshots of errors) attached to failed tests. Pictures are exported into a
+   * directory next to the JUnit report, named after the report with suffix <i>-pictures</i> (and a counter if the directory exists already), and
+   * linked from the output of the test case as <code>[[ATTACHMENT|path]]</code> (as understood by the JUnit Attachments plugin). Of plain MHT files
+   * only the pictures of failed tests are decoded once the log has been read. MHT files read sequentially (compressed or read ahead) are read only
+   * once: their pictures are exported while reading and the ones not attached to failed tests deleted afterwards. Defaults to <code>false</code>.
+   */
+  public final static String PROPERTY_EXPORT_PICTURES = TestCompleteInputMetric.class.getName() + ".exportPictures";
+
+  /**
+   * Magic bytes of files compressed with gzip
+   */
+  private final static byte GZIP_MAGIC[] = {(byte) 0x1f, (byte) 0x8b};
+  /**
+   * Magic bytes of zip files (local file header)
+   */
+  private final static byte ZIP_MAGIC[] = {'P', 'K', 3, 4};
+
+  /**
+   * This method extracts all XML and JavaScript files inside a MHT file produced by TestComplete/TestExecute into a store, in memory or on disk as
+   * chosen by {@link #createEntryStore(File)}. Entries of plain MHT files are decoded in parallel, see {@link #PROPERTY_PARALLELISM}. MHT files compressed with gzip
+   * or stored in a zip file are read sequentially straight out of the compressed data. The log format is recognized by its root entry and only
+   * entries of that format are extracted: of plain MHT files with a <i>_root.js</i> entry (JSON logs) only that entry and the entries referenced by it
+   * are decoded, of XML logs only XML entries. Entries of plain MHT files with the same data as an entry
+   * extracted before are not decoded again but share its data, see {@link MHTArchive#findIdenticalEntries(List)}. If read ahead is enabled (see
+   * {@link #PROPERTY_READ_AHEAD_DEPTH}) all files are read sequentially while the next data is read on a background thread.
    *
    * @param inputFile MHT file to process
-   * @param params map where parameter with key "baseUrl" and value returned by {@link MHTInputStream#getBaseUrl()} is added
-   * @return temporary file that contains all the extracted XML files from input MHT file
+   * @param params map where parameter with key "baseUrl" and value returned by {@link MHTArchive#getBaseUrl()} is added
+   * @param archive the MHT file opened by {@link #openMHTArchive(File)} or <code>null</code> if it is read sequentially
+   * @param pictures exporter of the pictures read sequentially or <code>null</code> if pictures are not exported
+   * @return store that contains all the extracted files from input MHT file, to be closed by the caller
    * @throws MHTException if and MHT error occurs
    * @throws IOException if an I/O error ocurrs
+   * @throws ConversionException if the MHT file holds neither a JSON nor a XML log
    */
-  private File extractFilesFromMHTFile(File inputFile, Map<String, Object> params) throws IOException, SecurityException {
-    File tempDir = Files.createTempDir();
-    try (MHTInputStream mis = new MHTInputStream(new FileInputStream(inputFile))) {
+  private SpillingEntryStore extractFilesFromMHTFile(File inputFile, Map<String, Object> params, MHTArchive archive, PictureExporter pictures)
+    throws IOException {
+    final SpillingEntryStore store = createEntryStore(inputFile);
+    try {
+      extractFilesFromMHTFile(inputFile, params, store, archive, pictures);
+    } catch (IOException | RuntimeException e) {
+      store.close();
+      throw e;
+    }
+    if (store.getBackend() == SpillingEntryStore.Backend.DISK) {
+      LOGGER.log(Level.FINE, "Entries of MHT file ''{0}'' extracted to disk", inputFile.getName());
+    }
+    return store;
+  }
 
-      if (params != null) {
-        params.put(INTERNAL_PARAM_BASE_URL, mis.getBaseUrl());
-        // It seems that backslashes should be escaped in XSL references
-        // so we just convert to UNIX format
-        // that works also on Windows for Java.
-        params.put(INTERNAL_PARAM_BASE_PATH, FilenameUtils.normalize(tempDir.getAbsolutePath(), true));
+  private void extractFilesFromMHTFile(File inputFile, Map<String, Object> params, SpillingEntryStore store, MHTArchive archive,
+    PictureExporter pictures) throws IOException {
+    if (archive == null) {
+      try (MHTInputStream mis = new MHTInputStream(openSequentialMHTFile(inputFile))) {
+        putBaseUrl(params, mis.getBaseUrl());
+
+        // The format is known once the root entry has been read. Until
+        // then entries of both formats are extracted
+        LogFormat format = null;
+        MHTEntry entry;
+        while ((entry = mis.getNextEntry()) != null) {
+          if (format == null) {
+            format = getLogFormat(entry);
+          }
+          // Pictures are exported as they come by, the failed tests they
+          // are attached to are not known before the log has been read
+          if (pictures != null && PictureExporter.isPicture(entry)) {
+            pictures.export(entry, mis);
+          } else if (format == null ? isExtracted(entry) : isExtracted(entry, format)) {
+            extractEntry(store, entry, mis);
+          }
+        }
+        if (format == null) {
+          throw noRootEntryException(inputFile);
+        }
       }
+      return;
+    }
 
-      MHTEntry entry;
-      byte buffer[] = new byte[1024];
-      int readBytes;
-
-      while ((entry = mis.getNextEntry()) != null) {
-        if ((CONTENT_TYPE_XML.equals(entry.getContentType()))
-          || ((CONTENT_TYPE_PLAIN.equals(entry.getContentType())
-          || CONTENT_TYPE_JAVASCRIPT.equals(entry.getContentType())
-          || CONTENT_TYPE_OCTETSTREAM.equals(entry.getContentType()))
-          && (entry.getName().startsWith("_") || entry.getName().contains("test")))) {
-          File out = new File(tempDir, entry.getName());
-          boolean createNewFile = out.createNewFile();
-          if (createNewFile) {
-            try (FileOutputStream fos = new FileOutputStream(out)) {
-              while ((readBytes = mis.read(buffer)) > 0) {
-                fos.write(buffer, 0, readBytes);
-              }
-            }
-          } else {
-            FileUtils.deleteDirectory(tempDir);
-            mis.close();
-            throw new FileExistsException("File " + entry.getName() + " already exists.");
-          }
+    putBaseUrl(params, archive.getBaseUrl());
+    int parallelism = Integer.getInteger(PROPERTY_PARALLELISM, Runtime.getRuntime().availableProcessors());
+
+    // The format is recognized from the index before anything is decoded
+    Set<String> names = new HashSet<>();
+    Predicate<MHTEntry> selected;
+    MHTEntry rootJS = archive.getEntry(ROOT_JS);
+    MHTEntry rootXML = archive.getEntry(ROOT_XML);
+    if (rootJS != null && getLogFormat(rootJS) == LogFormat.JSON) {
+      // Only the entries referenced by _root.js are extracted, the rest
+      // of the archive is never decoded
+      archive.processEntries(Collections.singletonList(rootJS),
+        (MHTEntry entry, InputStream data) -> extractEntry(store, entry, data), 1);
+      names.add(rootJS.getName());
+      Set<String> referenced = getReferencedEntryNames(store);
+      selected = (MHTEntry entry) -> entry != rootJS && referenced.contains(entry.getName());
+    } else if (rootXML != null && getLogFormat(rootXML) == LogFormat.XML) {
+      selected = (MHTEntry entry) -> isExtracted(entry, LogFormat.XML);
+    } else {
+      throw noRootEntryException(inputFile);
+    }
+
+    // Entries are extracted up to the first duplicated name, as done
+    // when reading them sequentially
+    List<MHTEntry> entries = new ArrayList<>();
+    String duplicatedName = null;
+    for (MHTEntry entry : archive.getEntries()) {
+      if (selected.test(entry)) {
+        if (!names.add(entry.getName())) {
+          duplicatedName = entry.getName();
+          break;
         }
+        entries.add(entry);
       }
+    }
 
-      return tempDir;
+    // Entries with the same data as an entry extracted before are not
+    // decoded again but share its data
+    List<MHTEntry> decodedEntries = new ArrayList<>();
+    Map<MHTEntry, MHTEntry> copiedEntries = new LinkedHashMap<>();
+    Map<MHTEntry, MHTEntry> identicalEntries = archive.findIdenticalEntries(entries);
+    for (MHTEntry entry : entries) {
+      MHTEntry source = identicalEntries.get(entry);
+      if (source == null) {
+        decodedEntries.add(entry);
+      } else {
+        copiedEntries.put(entry, source);
+      }
+    }
+
+    archive.processEntries(decodedEntries, (MHTEntry entry, InputStream data) -> extractEntry(store, entry, data), parallelism);
+    for (Map.Entry<MHTEntry, MHTEntry> copy : copiedEntries.entrySet()) {
+      if (!store.copyEntry(copy.getKey().getName(), copy.getValue().getName())) {
+        throw new FileExistsException("File " + copy.getKey().getName() + " already exists.");
+      }
+    }
 
-    } catch (IOException | SecurityException e) {
-      // Cleanup temporary directory here upon failure
-      FileUtils.deleteDirectory(tempDir);
+    if (duplicatedName != null) {
+      throw new FileExistsException("File " + duplicatedName + " already exists.");
+    }
+  }
+
+  /**
+   * Parses the extracted <i>_root.js</i> entry and returns the names of the entries referenced by its providers.
+   */
+  private static Set<String> getReferencedEntryNames(EntryStore store) throws IOException {
+    JSONObject jsonData = MyUtils.parseJSONPEntry(store, ROOT_JS, "UTF-8");
+    if (jsonData == null) {
+      return Collections.emptySet();
+    }
+    return TCLog.getReferencedEntryNames(jsonData);
+  }
+
+  /**
+   * Creates the store entries of the given MHT file are extracted into. Unless configured (see {@link #PROPERTY_EXTRACTION_BACKEND}) MHT files bigger
+   * than {@link #PROPERTY_MAX_MEMORY_SIZE} are extracted to disk, smaller ones onto the heap if at most half the free heap is needed, off the heap
+   * if the free direct memory (see {@link #PROPERTY_MAX_DIRECT_MEMORY_SIZE}) suffices and to disk otherwise. Extracted data is never bigger than the (uncompressed) MHT file since it is base64
+   * encoded there. The size of compressed MHT files is unknown, they are extracted onto the heap until the budget is exceeded.
+   *
+   * @param inputFile MHT file to extract
+   * @return an empty store
+   * @throws IOException if an I/O error ocurrs
+   */
+  private static SpillingEntryStore createEntryStore(File inputFile) throws IOException {
+    long maxMemorySize = Long.getLong(PROPERTY_MAX_MEMORY_SIZE, 256L * 1024 * 1024);
+    Runtime runtime = Runtime.getRuntime();
+    long freeHeap = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+    long freeDirectMemory = getFreeDirectMemory(maxMemorySize);
+    long length = inputFile.length();
+
+    SpillingEntryStore.Backend backend;
+    String configured = System.getProperty(PROPERTY_EXTRACTION_BACKEND);
+    if (configured != null && !configured.trim().isEmpty()) {
+      backend = SpillingEntryStore.Backend.valueOf(configured.trim().toUpperCase(Locale.ENGLISH));
+    } else if (isCompressed(inputFile)) {
+      backend = SpillingEntryStore.Backend.HEAP;
+    } else if (length > maxMemorySize) {
+      backend = SpillingEntryStore.Backend.DISK;
+    } else if (length <= freeHeap / 2) {
+      backend = SpillingEntryStore.Backend.HEAP;
+    } else if (length <= freeDirectMemory) {
+      backend = SpillingEntryStore.Backend.OFF_HEAP;
+    } else {
+      backend = SpillingEntryStore.Backend.DISK;
+    }
+
+    long budget;
+    if (backend == SpillingEntryStore.Backend.HEAP) {
+      budget = Math.min(maxMemorySize, freeHeap / 2);
+    } else if (backend == SpillingEntryStore.Backend.OFF_HEAP) {
+      budget = Math.min(maxMemorySize, freeDirectMemory);
+    } else {
+      budget = maxMemorySize;
+    }
+    return new SpillingEntryStore(backend, budget);
+  }
+
+  /**
+   * Returns the number of bytes extracted entries may still allocate in direct buffers: {@link #PROPERTY_MAX_DIRECT_MEMORY_SIZE} less the memory
+   * used by direct buffers already.
+   */
+  private static long getFreeDirectMemory(long maxMemorySize) {
+    long freeDirectMemory = Long.getLong(PROPERTY_MAX_DIRECT_MEMORY_SIZE, maxMemorySize);
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if ("direct".equals(pool.getName())) {
+        freeDirectMemory -= pool.getMemoryUsed();
+      }
+    }
+    return Math.max(0, freeDirectMemory);
+  }
+
+  private static boolean isCompressed(File inputFile) throws IOException {
+    byte magic[] = new byte[ZIP_MAGIC.length];
+    int len;
+    try (InputStream is = new FileInputStream(inputFile)) {
+      len = IOUtils.read(is, magic);
+    }
+    return startsWith(magic, len, GZIP_MAGIC) || startsWith(magic, len, ZIP_MAGIC);
+  }
+
+  private static void putBaseUrl(Map<String, Object> params, String baseUrl) {
+    if (params != null) {
+      params.put(INTERNAL_PARAM_BASE_URL, baseUrl);
+    }
+  }
+
+  private static void putBasePath(Map<String, Object> params, File dir) {
+    if (params != null) {
+      // It seems that backslashes should be escaped in XSL references
+      // so we just convert to UNIX format
+      // that works also on Windows for Java.
+      params.put(INTERNAL_PARAM_BASE_PATH, FilenameUtils.normalize(dir.getAbsolutePath(), true));
+    }
+  }
+
+  private static boolean isExtracted(MHTEntry entry) {
+    return isExtracted(entry, LogFormat.XML) || isExtracted(entry, LogFormat.JSON);
+  }
+
+  /**
+   * Checks whether an entry may be needed to convert a log of the given format.
+   */
+  private static boolean isExtracted(MHTEntry entry, LogFormat format) {
+    if (format == LogFormat.XML) {
+      return CONTENT_TYPE_XML.equals(entry.getContentType());
+    }
+    return (CONTENT_TYPE_PLAIN.equals(entry.getContentType())
+      || CONTENT_TYPE_JAVASCRIPT.equals(entry.getContentType())
+      || CONTENT_TYPE_OCTETSTREAM.equals(entry.getContentType()))
+      && (entry.getName().startsWith("_") || entry.getName().contains("test"));
+  }
+
+  /**
+   * Returns the format of the log whose root entry is the given entry.
+   *
+   * @return the log format or <code>null</code> if the entry is not a root entry
+   */
+  private static LogFormat getLogFormat(MHTEntry entry) {
+    if (ROOT_JS.equals(entry.getName()) && isExtracted(entry, LogFormat.JSON)) {
+      return LogFormat.JSON;
+    } else if (ROOT_XML.equals(entry.getName()) && isExtracted(entry, LogFormat.XML)) {
+      return LogFormat.XML;
+    }
+    return null;
+  }
+
+  private static ConversionException noRootEntryException(File inputFile) {
+    return new ConversionException(
+      "Invalid TestComplete MHT file '" + inputFile.getName() + "'. No '" + ROOT_JS + "' or '" + ROOT_XML + "' found.");
+  }
+
+  private static MHTEntry extractEntry(SpillingEntryStore store, MHTEntry entry, InputStream data) throws IOException {
+    if (!store.putEntry(entry.getName(), data)) {
+      throw new FileExistsException("File " + entry.getName() + " already exists.");
+    }
+    return entry;
+  }
+
+  /**
+   * Opens an MHT file for random access unless it is compressed or read ahead is enabled. Big files are read memory mapped, see
+   * {@link #PROPERTY_MEMORY_MAPPED_SIZE}.
+   *
+   * @param inputFile file to open
+   * @return the archive or <code>null</code> if the file has to be read sequentially (see {@link #openSequentialMHTFile(File)})
+   * @throws IOException if an I/O error ocurrs
+   */
+  private static MHTArchive openMHTArchive(File inputFile) throws IOException {
+    if (Integer.getInteger(PROPERTY_READ_AHEAD_DEPTH, 0) > 0 || isCompressed(inputFile)) {
+      return null;
+    }
+    long memoryMappedSize = Long.getLong(PROPERTY_MEMORY_MAPPED_SIZE, 1024L * 1024 * 1024);
+    return new MHTArchive(inputFile, memoryMappedSize >= 0 && inputFile.length() >= memoryMappedSize);
+  }
+
+  /**
+   * Opens the MHT data of an input file to be read sequentially: the MHT files that are compressed or read ahead. Compression is detected by the
+   * magic bytes at the start of the file: gzip files are decompressed, from zip files the first entry with extension <i>.mht</i> is read.
+   *
+   * @param inputFile file to open
+   * @return stream of uncompressed MHT data
+   * @throws IOException if an I/O error ocurrs or no MHT file is found in a zip file
+   */
+  private static InputStream openSequentialMHTFile(File inputFile) throws IOException {
+    int readAheadDepth = Integer.getInteger(PROPERTY_READ_AHEAD_DEPTH, 0);
+    InputStream is = new FileInputStream(inputFile);
+    if (readAheadDepth > 0) {
+      is = new ReadAheadInputStream(is, Integer.getInteger(PROPERTY_READ_AHEAD_BUFFER_SIZE, 1024 * 1024), readAheadDepth);
+    }
+    is = new BufferedInputStream(is);
+
+    try {
+      byte magic[] = new byte[ZIP_MAGIC.length];
+      is.mark(magic.length);
+      int len = IOUtils.read(is, magic);
+      is.reset();
+
+      if (startsWith(magic, len, GZIP_MAGIC)) {
+        return new GZIPInputStream(is, 64 * 1024);
+      } else if (startsWith(magic, len, ZIP_MAGIC)) {
+        ZipInputStream zis = new ZipInputStream(is);
+        ZipEntry zipEntry;
+        while ((zipEntry = zis.getNextEntry()) != null) {
+          if (!zipEntry.isDirectory() && "mht".equalsIgnoreCase(FilenameUtils.getExtension(zipEntry.getName()))) {
+            return zis;
+          }
+        }
+        throw new FileNotFoundException("No MHT file found in zip file '" + inputFile.getName() + "'");
+      }
+      return is;
+    } catch (IOException | RuntimeException e) {
+      is.close();
       throw e;
     }
   }
 
+  private static boolean startsWith(byte[] b, int len, byte[] prefix) {
+    if (len < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (b[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public void convert(File inputFile, File outFile, Map<String, Object> params) throws ConversionException {
-    File inputTempDir = null;
+    SpillingEntryStore store = null;
+    MHTArchive archive = null;
+    PictureExporter pictures = null;
+    Set<String> linkedPictures = new HashSet<>();
     Map<String, Object> conversionParams = new HashMap<>();
     if (params != null) {
       conversionParams.putAll(params);
     }
 
     try {
-      boolean isJSONPattern = false;
-      boolean isXMLPattern = false;
-      inputTempDir = this.extractFilesFromMHTFile(inputFile, conversionParams);
+      if (Boolean.getBoolean(PROPERTY_EXPORT_PICTURES)) {
+        File outDir = outFile.getAbsoluteFile().getParentFile();
+        pictures = new PictureExporter(new File(outDir, FilenameUtils.getBaseName(outFile.getName()) + "-pictures"));
+      }
+      archive = openMHTArchive(inputFile);
+      store = this.extractFilesFromMHTFile(inputFile, conversionParams, archive, pictures);
+      // Strip both extensions of compressed files (e.g. 'log.mht.gz')
       this.fileName_ = FilenameUtils.removeExtension(inputFile.getName());
-
-      Collection<File> jsFiles = FileUtils.listFiles(inputTempDir, FileFilterUtils.nameFileFilter("_root.js"), null);
-      Collection<File> xmlFiles = FileUtils.listFiles(inputTempDir, FileFilterUtils.nameFileFilter("root.xml"), null);
-      if (jsFiles.isEmpty()) {
-        isJSONPattern = false;
-        if (!xmlFiles.isEmpty()) {
-          isXMLPattern = true;
-        }
-      } else {
-        isJSONPattern = true;
+      if ("mht".equalsIgnoreCase(FilenameUtils.getExtension(this.fileName_))) {
+        this.fileName_ = FilenameUtils.removeExtension(this.fileName_);
       }
 
+      boolean isJSONPattern = store.containsEntry(ROOT_JS);
+      boolean isXMLPattern = !isJSONPattern && store.containsEntry(ROOT_XML);
+
       /*
        * TODO We are unable to pass testFilterPattern as specified by user because
        * xUnit does not pass the TestType instance (TestCompleteTestType). Base plugin
@@ -251,10 +623,13 @@ public class TestCompleteInputMetric extends InputMetricXSL {
       }
 
       if (isJSONPattern) {
-        File rootJS = jsFiles.iterator().next();
-        this.convertJson(inputTempDir, rootJS, outFile, conversionParams);
+        this.convertJson(store, ROOT_JS, outFile, conversionParams, archive, pictures, linkedPictures);
       } else if (isXMLPattern) {
-        File rootXML = xmlFiles.iterator().next();
+        // XML files reference each other (XSL document() function) relative
+        // to the base path, so they are needed on disk
+        File inputDir = store.toDirectory();
+        putBasePath(conversionParams, inputDir);
+        File rootXML = new File(inputDir, ROOT_XML);
         ConversionService conversionService = new ConversionService();
         if (getXslFile() == null) {
           conversionService.convert(new StreamSource(this
@@ -267,19 +642,30 @@ public class TestCompleteInputMetric extends InputMetricXSL {
         }
       } else {
         // Wrong Pattern
-        throw new ConversionException(
-          "Invalid TestComplete MHT file '" + inputFile.getName() + "'. No '_root.js' or 'root.xml' found.");
+        throw noRootEntryException(inputFile);
       }
 
+    } catch (MHTLimitException e) {
+      throw new ConversionException("Errors parsing input MHT file '" + inputFile.getName() + "'. " + e.getMessage(), e);
     } catch (IOException e) {
       throw new ConversionException("Errors parsing input MHT file '" + inputFile.getName() + "'", e);
     } catch (SecurityException e) {
       throw new ConversionException("Error writing temp files.", e);
     } finally {
 
-      if (inputTempDir != null) {
+      if (pictures != null) {
+        pictures.retain(linkedPictures);
+      }
+      if (store != null) {
+        try {
+          store.close();
+        } catch (IOException e) {
+
+        }
+      }
+      if (archive != null) {
         try {
-          FileUtils.deleteDirectory(inputTempDir);
+          archive.close();
         } catch (IOException e) {
 
         }
@@ -288,33 +674,53 @@ public class TestCompleteInputMetric extends InputMetricXSL {
   }
 
   /**
-   * Parses the given JavaScript file for JSON parts and generates a JUnit xml file
+   * Parses the given JavaScript entry for JSON parts and generates a JUnit xml file
    *
-   * @param inputTempDir Tempory directory used for temp files. will be deleted at the end.
-   * @param inputFile JavaScript file containing JSON inforamtion
+   * @param store Store holding the entries extracted from the MHT file
+   * @param rootName Name of the JavaScript entry containing JSON inforamtion
    * @param outFile JUnit xml file
+   * @param archive the MHT file opened for random access or <code>null</code> if it has been read sequentially
+   * @param pictures Exporter of the pictures of failed tests or <code>null</code> if pictures are not exported
+   * @param linkedPictures Set the names of all pictures linked from the JUnit xml file are added to
    */
-  private void convertJson(File inputTempDir, File inputFile, File outFile, Map<String, Object> conversionParams) {
+  private void convertJson(EntryStore store, String rootName, File outFile, Map<String, Object> conversionParams, MHTArchive archive,
+    PictureExporter pictures, Set<String> linkedPictures) {
 
-    String jsonRaw = null;
+    JSONObject jsonData = null;
     try {
-      String fileContent = MyUtils.readJSONFile(inputFile, "UTF-8");
-      int start = fileContent.indexOf('(');
-      int end = fileContent.indexOf(')');
-      fileContent = fileContent.substring(start + 1, end);
-
-      jsonRaw = fileContent.substring(fileContent.indexOf(',') + 1);
-
+      jsonData = MyUtils.parseJSONPEntry(store, rootName, "UTF-8");
     } catch (FileNotFoundException e) {
-      throw new ConversionException("File '" + inputFile.getName() + "' not found.");
+      throw new ConversionException("File '" + rootName + "' not found.");
     } catch (IOException e) {
-      throw new ConversionException("File '" + inputFile.getName() + "' can not be read.");
+      throw new ConversionException("File '" + rootName + "' can not be read.");
     }
 
-    if ((jsonRaw != null) && (!jsonRaw.trim().isEmpty())) {
-      JSONObject jsonData = new JSONObject(jsonRaw);
+    if (jsonData != null) {
       TCLog tcLog;
-      tcLog = new TCLog(jsonData, inputTempDir);
+      tcLog = new TCLog(jsonData, store, Integer.getInteger(PROPERTY_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+      String filterPattern = "[^\\]]+";
+      if (conversionParams != null && conversionParams.get(PARAM_TEST_PATTERN) != null) {
+        filterPattern = (String) conversionParams.get(PARAM_TEST_PATTERN);
+      }
+      Pattern p = Pattern.compile("[^ ]+ Test Log \\[(" + filterPattern + ")\\]");
+
+      // Of MHT files opened for random access only the pictures of failed
+      // tests are exported, the pictures of the others have been exported
+      // while reading them
+      if (pictures != null && archive != null) {
+        Set<String> failurePictures = new LinkedHashSet<>();
+        for (TCLogItem item : tcLog.getTCLogItems()) {
+          if (isFailure(item) && p.matcher(item.getName()).matches()) {
+            failurePictures.addAll(item.getPictures());
+          }
+        }
+        try {
+          exportPictures(archive, failurePictures, pictures);
+        } catch (IOException e) {
+          throw new ConversionException("Error exporting pictures of failed tests.", e);
+        }
+      }
+
       OutputStreamWriter fw;
       try {
         fw = new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8);
@@ -335,12 +741,6 @@ public class TestCompleteInputMetric extends InputMetricXSL {
             fw.write(">\n");
             for (Iterator<TCLogItem> it = tcLog.getTCLogItems().iterator(); it.hasNext();) {
               TCLogItem item = it.next();
-              String filterPattern = "[^\\]]+";
-              if (conversionParams != null && conversionParams.get(PARAM_TEST_PATTERN) != null) {
-                filterPattern = (String) conversionParams.get(PARAM_TEST_PATTERN);
-              }
-              String regex = "[^ ]+ Test Log \\[(" + filterPattern + ")\\]";
-              Pattern p = Pattern.compile(regex);
               Matcher m = p.matcher(item.getName());
               if (m.matches()) {
 
@@ -350,12 +750,22 @@ public class TestCompleteInputMetric extends InputMetricXSL {
                 time = String.format("%d", (item.getRunTime() / 1000));
                 fw.write(" time=\"" + time + "\"");
                 fw.write(">\n");
-                if (item.getStatus() == 2 && item.getType().equals("Error")) {
+                if (isFailure(item)) {
                   fw.write("<failure message=\"" + htmlEscape(item.getMessage()) + "\"></failure>\n");
-                  writeSystemOut(fw, item);
+                  List<File> attachments = new ArrayList<>();
+                  if (pictures != null) {
+                    for (String picture : item.getPictures()) {
+                      File file = pictures.getFile(picture);
+                      if (file != null) {
+                        attachments.add(file);
+                        linkedPictures.add(picture);
+                      }
+                    }
+                  }
+                  writeSystemOut(fw, item, attachments);
                   fw.write("<system-err/>\n");
                 } else if (item.getStatus() > 0 || item.getStatus() < 2) {
-                  writeSystemOut(fw, item);
+                  writeSystemOut(fw, item, Collections.<File>emptyList());
                   fw.write("<system-err/>\n");
                 }
                 fw.write("</testcase>\n");
@@ -377,17 +787,36 @@ public class TestCompleteInputMetric extends InputMetricXSL {
     }
   }
 
+  private static boolean isFailure(TCLogItem item) {
+    return item.getStatus() == 2 && item.getType().equals("Error");
+  }
+
+  /**
+   * Exports the pictures with the given names, only these entries are decoded.
+   */
+  private static void exportPictures(MHTArchive archive, Set<String> names, PictureExporter pictures) throws IOException {
+    List<MHTEntry> entries = new ArrayList<>();
+    for (String name : names) {
+      MHTEntry entry = archive.getEntry(name);
+      if (entry != null && PictureExporter.isPicture(entry)) {
+        entries.add(entry);
+      }
+    }
+    archive.processEntries(entries, pictures::export, Integer.getInteger(PROPERTY_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+  }
+
   /**
    * Helper for generating a <code><system-out></code> Tag
    *
    * @param fw
    * @param item
+   * @param attachments
    * @throws IOException
    */
-  private void writeSystemOut(OutputStreamWriter fw, TCLogItem item) throws IOException {
+  private void writeSystemOut(OutputStreamWriter fw, TCLogItem item, List<File> attachments) throws IOException {
     fw.write("<system-out><![CDATA[\n");
     fw.write("[" + MyUtils.convertTc2DateTime(item.getTestTimeInMilliSec()) + "] ** " + item.getType() + " ** " + item.getMessage() + "\n");
-    if (!item.getCallStack().isEmpty()) {
+    if (!item.getCallStackFrames().isEmpty()) {
       writeCallStack(fw, item);
     }
     if (!item.getInfo().isEmpty()) {
@@ -395,6 +824,9 @@ public class TestCompleteInputMetric extends InputMetricXSL {
       fw.write(htmlEscape(item.getInfo()));
       fw.write("\n");
     }
+    for (File attachment : attachments) {
+      fw.write("[[ATTACHMENT|" + attachment.getAbsolutePath() + "]]\n");
+    }
     fw.write("]]></system-out>\n");
   }
 
@@ -407,14 +839,12 @@ public class TestCompleteInputMetric extends InputMetricXSL {
    */
   private void writeCallStack(OutputStreamWriter fw, TCLogItem item) throws IOException {
     fw.write("Call Stack:\n");
-    List list = item.getCallStack();
-    for (int i = 0; i < list.size(); i++) {
-      HashMap<String, String> m = (HashMap<String, String>) list.get(i);
-      fw.write("    " + m.get("Line") + ": ");
-      if (!m.get("Unit").isEmpty()) {
-        fw.write(m.get("Unit") + ".");
+    for (CallStackFrame frame : item.getCallStackFrames()) {
+      fw.write("    " + frame.getLine() + ": ");
+      if (!frame.getUnit().isEmpty()) {
+        fw.write(frame.getUnit() + ".");
       }
-      fw.write(m.get("Test"));
+      fw.write(frame.getTest());
       fw.write("\n");
     }
     fw.write("\n");
@@ -0,0 +1,92 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import java.util.Objects;
+
+/**
+ * A frame of the call stack of a test log message. Frames are immutable, so equal frames of different items are shared through a
+ * {@link StringTable}.
+ */
+public final class CallStackFrame {
+
+  private final String unit;
+  private final int line;
+  private final String test;
+
+  /**
+   * Creates a frame.
+   *
+   * @param unit name of the unit or an empty string
+   * @param line line number in the unit
+   * @param test name of the test (routine)
+   */
+  public CallStackFrame(String unit, int line, String test) {
+    this.unit = unit;
+    this.line = line;
+    this.test = test;
+  }
+
+  /**
+   * @return The name of the unit or an empty string
+   */
+  public String getUnit() {
+    return unit;
+  }
+
+  /**
+   * @return The line number in the unit
+   */
+  public int getLine() {
+    return line;
+  }
+
+  /**
+   * @return The name of the test (routine)
+   */
+  public String getTest() {
+    return test;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof CallStackFrame)) {
+      return false;
+    }
+    CallStackFrame other = (CallStackFrame) obj;
+    return line == other.line && Objects.equals(unit, other.unit) && Objects.equals(test, other.test);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(unit, line, test);
+  }
+
+  @Override
+  public String toString() {
+    return line + ": " + (unit.isEmpty() ? "" : unit + ".") + test;
+  }
+}
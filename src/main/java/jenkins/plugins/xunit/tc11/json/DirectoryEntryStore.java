@@ -0,0 +1,70 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link EntryStore} reading the entries from files (named after the entries) in a directory. The directory is listed once, on the first lookup, so
+ * every lookup is a hash lookup afterwards. Files added to the directory later are not found.
+ */
+public class DirectoryEntryStore implements EntryStore {
+
+  private final File dir;
+  private Map<String, File> files;
+
+  public DirectoryEntryStore(File dir) {
+    this.dir = dir;
+  }
+
+  private synchronized Map<String, File> getFiles() {
+    if (files == null) {
+      files = new HashMap<>();
+      File list[] = dir.listFiles();
+      if (list != null) {
+        for (File file : list) {
+          if (file.isFile()) {
+            files.put(file.getName(), file);
+          }
+        }
+      }
+    }
+    return files;
+  }
+
+  @Override
+  public boolean containsEntry(String name) {
+    return getFiles().containsKey(name);
+  }
+
+  @Override
+  public InputStream openEntry(String name) throws IOException {
+    File file = getFiles().get(name);
+    return file != null ? new FileInputStream(file) : null;
+  }
+}
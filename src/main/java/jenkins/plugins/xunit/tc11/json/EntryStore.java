@@ -0,0 +1,49 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Read access to the entries extracted from a MHT file (e.g. <i>_root.js</i> and the JavaScript files of the providers it references).
+ */
+public interface EntryStore {
+
+  /**
+   * Checks whether an entry with the given name is stored.
+   *
+   * @param name name of the entry
+   * @return <code>true</code> if the entry is stored
+   */
+  boolean containsEntry(String name);
+
+  /**
+   * Opens the data of the entry with the given name.
+   *
+   * @param name name of the entry
+   * @return stream of entry data or <code>null</code> if no entry with such name is stored
+   * @throws IOException if an I/O error occurs
+   */
+  InputStream openEntry(String name) throws IOException;
+}
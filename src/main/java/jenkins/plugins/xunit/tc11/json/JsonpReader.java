@@ -0,0 +1,137 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader of the JSON data in the JavaScript files of TestComplete logs. Such files consist of a single function call like
+ * <code>_json_loaded("name.js",{...})</code>, where the last argument is the JSON data. The function call is stripped on the fly: everything up to the
+ * start of the JSON data is skipped. The closing parenthesis after the JSON data is passed through, it is ignored by a JSON parser reading a single
+ * value.<br>
+ * <br>
+ * Parentheses and commas inside the quoted first argument do not confuse the reader.
+ */
+final class JsonpReader extends FilterReader {
+
+  private boolean started;
+  private int pending = -1;
+
+  JsonpReader(Reader in) {
+    super(in);
+  }
+
+  /**
+   * Skips the function name, the opening parenthesis and the first argument (if any) with its trailing comma.
+   */
+  private void start() throws IOException {
+    started = true;
+    int c;
+    while ((c = in.read()) >= 0 && c != '(') {
+      // skip function name
+    }
+    do {
+      c = in.read();
+    } while (Character.isWhitespace(c));
+    if (c == '{' || c == '[' || c < 0) {
+      // No first argument
+      pending = c;
+      return;
+    }
+
+    int quote = 0;
+    do {
+      if (quote != 0) {
+        if (c == '\\') {
+          c = in.read();
+        } else if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == ',') {
+        return;
+      }
+    } while (c >= 0 && (c = in.read()) >= 0);
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!started) {
+      start();
+    }
+    if (pending != -1) {
+      int c = pending;
+      pending = -1;
+      return c;
+    }
+    return in.read();
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    if (!started) {
+      start();
+    }
+    if (len == 0) {
+      return 0;
+    }
+    if (pending != -1) {
+      cbuf[off] = (char) pending;
+      pending = -1;
+      return 1;
+    }
+    return in.read(cbuf, off, len);
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = 0;
+    while (skipped < n && read() >= 0) {
+      skipped++;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean ready() throws IOException {
+    return started && (pending != -1 || in.ready());
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void mark(int readAheadLimit) throws IOException {
+    throw new IOException("mark() not supported");
+  }
+
+  @Override
+  public void reset() throws IOException {
+    throw new IOException("reset() not supported");
+  }
+}
@@ -24,21 +24,24 @@ package jenkins.plugins.xunit.tc11.json;
 
 import org.apache.commons.io.IOUtils;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import jenkins.plugins.xunit.tc11.TestCompleteInputMetric;
+import java.io.Reader;
 
 public class MyUtils {
 
+  /**
+   * Date time format shared by all callers of the static conversion methods. Conversions of a {@link TCLog} use their own instance.
+   */
+  private static final TcDateTimeFormat DATE_TIME_FORMAT = new TcDateTimeFormat();
+
   /**
    * Opens the given JSON file and returns the content as {@link org.json.JSONObject}
    * <br>
@@ -52,9 +55,7 @@ public class MyUtils {
    * @throws IOException if an I/O error occurs
    */
   public static JSONObject parseJSONFile(File jsonFile, String encoding) throws FileNotFoundException, IOException {
-    InputStreamReader fi = new InputStreamReader(new FileInputStream(jsonFile), encoding);
-    String content = IOUtils.toString(fi);
-    return new JSONObject(content);
+    return new JSONObject(readJSONFile(jsonFile, encoding));
   }
 
   /**
@@ -70,9 +71,98 @@ public class MyUtils {
    * @throws IOException if an I/O error occurs
    */
   public static String readJSONFile(File jsonFile, String encoding) throws FileNotFoundException, IOException {
-    InputStreamReader fi = new InputStreamReader(new FileInputStream(jsonFile), encoding);
-    String content = IOUtils.toString(fi);
-    return content;
+    return readJSON(new FileInputStream(jsonFile), encoding);
+  }
+
+  /**
+   * Reads the given stream and returns the content as string. The stream is closed afterwards.
+   *
+   * @param in Stream of JSON data
+   * @param encoding The name of a supported {@link java.nio.charset.Charset charset}
+   * @return The content as string
+   * @throws IOException if an I/O error occurs
+   */
+  public static String readJSON(InputStream in, String encoding) throws IOException {
+    try (InputStreamReader fi = new InputStreamReader(in, encoding)) {
+      return IOUtils.toString(fi);
+    }
+  }
+
+  /**
+   * Reads the entry with the given name from the store and returns the content as string
+   *
+   * @param store Store of the entries extracted from the MHT file
+   * @param name Name of the entry
+   * @param encoding The name of a supported {@link java.nio.charset.Charset charset}
+   * @return The entry content as string
+   * @throws FileNotFoundException if no entry with such name is stored
+   * @throws IOException if an I/O error occurs
+   */
+  public static String readJSONEntry(EntryStore store, String name, String encoding) throws FileNotFoundException, IOException {
+    InputStream in = store.openEntry(name);
+    if (in == null) {
+      throw new FileNotFoundException("Entry '" + name + "' not found");
+    }
+    return readJSON(in, encoding);
+  }
+
+  /**
+   * Parses the JSON data of a JavaScript file of a TestComplete log (a function call whose last argument is the JSON data) while it is read. Neither the
+   * file content nor the JSON text are held in memory as a whole. The stream is closed afterwards.
+   *
+   * @param in Stream of the JavaScript file
+   * @param encoding The name of a supported {@link java.nio.charset.Charset charset}
+   * @return The parsed JSON data or <code>null</code> if the file holds no JSON data
+   * @throws IOException if an I/O error occurs
+   * @throws org.json.JSONException if the JSON data is invalid
+   */
+  public static JSONObject parseJSONP(InputStream in, String encoding) throws IOException {
+    return parseJSONP(in, encoding, null);
+  }
+
+  /**
+   * Same as {@link #parseJSONP(InputStream, String)} parsing only the fields selected by the given parser.
+   *
+   * @param parser parser of the selected fields or <code>null</code> to parse the whole data
+   */
+  static JSONObject parseJSONP(InputStream in, String encoding, PartialJsonParser parser) throws IOException {
+    try (Reader reader = new JsonpReader(new BufferedReader(new InputStreamReader(in, encoding)))) {
+      JSONTokener tokener = new JSONTokener(reader);
+      char c = tokener.nextClean();
+      if (c == 0 || c == ')') {
+        return null;
+      }
+      tokener.back();
+      return parser != null ? parser.parse(tokener) : new JSONObject(tokener);
+    }
+  }
+
+  /**
+   * Parses the JSON data of the JavaScript entry with the given name from the store, see {@link #parseJSONP(InputStream, String)}.
+   *
+   * @param store Store of the entries extracted from the MHT file
+   * @param name Name of the entry
+   * @param encoding The name of a supported {@link java.nio.charset.Charset charset}
+   * @return The parsed JSON data or <code>null</code> if the entry holds no JSON data
+   * @throws FileNotFoundException if no entry with such name is stored
+   * @throws IOException if an I/O error occurs
+   */
+  public static JSONObject parseJSONPEntry(EntryStore store, String name, String encoding) throws FileNotFoundException, IOException {
+    return parseJSONPEntry(store, name, encoding, null);
+  }
+
+  /**
+   * Same as {@link #parseJSONPEntry(EntryStore, String, String)} parsing only the fields selected by the given parser.
+   *
+   * @param parser parser of the selected fields or <code>null</code> to parse the whole data
+   */
+  static JSONObject parseJSONPEntry(EntryStore store, String name, String encoding, PartialJsonParser parser) throws FileNotFoundException,
+    IOException {
+    InputStream in = store.openEntry(name);
+    if (in == null) {
+      throw new FileNotFoundException("Entry '" + name + "' not found");
+    }
+    return parseJSONP(in, encoding, parser);
   }
 
   /**
@@ -83,30 +173,7 @@ public class MyUtils {
    * @return Date time string formated as 'yyyy-MM-dd hh:mm:ss.SSS'
    */
   public static String convertTc2DateTime(String inputDateTime) {
-    SimpleDateFormat formatter = null;
-    String dateTime = "";
-    if (inputDateTime != null && !inputDateTime.isEmpty()) {
-      if (inputDateTime.matches("[0-9]+/[0-9]+/[0-9]+ [0-9]+:[0-9]+:[0-9]+ PM|AM$")) {
-        formatter = new SimpleDateFormat("MM/dd/yyyy hh:mm:ss aa");
-      } else if (inputDateTime.matches("[0-9]+/[0-9]+/[0-9]+ [0-9]+:[0-9]+:[0-9]+$")) {
-        formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-      } else if (inputDateTime.matches("[0-9]+\\.[0-9]+\\.[0-9]+ [0-9]+:[0-9]+:[0-9]+$")) {
-        formatter = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
-      }
-      if (formatter != null) {
-        try {
-          SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
-          Date date = formatter.parse(inputDateTime);
-          if (date != null) {
-            dateTime = df.format(date);
-          }
-        } catch (ParseException ex) {
-          Logger.getLogger(TestCompleteInputMetric.class.getName()).log(Level.SEVERE, "[TC11 - xUnit] - {0}", ex);
-        }
-      }
-    }
-    return dateTime;
-
+    return DATE_TIME_FORMAT.toReportDateTime(inputDateTime);
   }
 
   /**
@@ -116,29 +183,7 @@ public class MyUtils {
    * @return Time in milli seconds
    */
   public static long convertTcDateTime2MillSec(String inputDateTime) {
-    SimpleDateFormat formatter = null;
-    long dateTime = 0;
-    if (inputDateTime != null && !inputDateTime.isEmpty()) {
-      if (inputDateTime.matches("[0-9]+/[0-9]+/[0-9]+ [0-9]+:[0-9]+:[0-9]+ PM|AM$")) {
-        formatter = new SimpleDateFormat("MM/dd/yyyy hh:mm:ss aa");
-      } else if (inputDateTime.matches("[0-9]+/[0-9]+/[0-9]+ [0-9]+:[0-9]+:[0-9]+$")) {
-        formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-      } else if (inputDateTime.matches("[0-9]+\\.[0-9]+\\.[0-9]+ [0-9]+:[0-9]+:[0-9]+$")) {
-        formatter = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
-      }
-      if (formatter != null) {
-        try {
-          Date date = formatter.parse(inputDateTime);
-          if (date != null) {
-            dateTime = date.getTime();
-          }
-        } catch (ParseException ex) {
-          Logger.getLogger(TestCompleteInputMetric.class.getName()).log(Level.SEVERE, "[TC11 - xUnit] - {0}", ex);
-        }
-      }
-    }
-    return dateTime;
-
+    return DATE_TIME_FORMAT.toMilliSec(inputDateTime);
   }
 
   /**
@@ -148,8 +193,6 @@ public class MyUtils {
    * @return Date string formated as 'yyyy-MM-dd hh:mm:ss.SSS'
    */
   public static String convertTc2DateTime(long msec) {
-    SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
-    Date date = new Date(msec);
-    return df.format(date);
+    return TcDateTimeFormat.toReportDateTime(msec);
   }
 }
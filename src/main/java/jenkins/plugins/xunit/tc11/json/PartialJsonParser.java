@@ -0,0 +1,156 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Parses selected fields of a JSON object only. Values of other fields are skipped without building them, arrays are cut after a number of elements
+ * and parsing stops as soon as all selected fields have been read, so the rest of the input is never read.
+ */
+final class PartialJsonParser {
+
+  private final Set<String> fields;
+  private final int maxElements;
+
+  /**
+   * Creates a parser.
+   *
+   * @param fields names of the fields of the top level object to parse
+   * @param maxElements maximum number of elements parsed of arrays that are values of the selected fields
+   */
+  PartialJsonParser(Collection<String> fields, int maxElements) {
+    this.fields = new HashSet<>(fields);
+    this.maxElements = maxElements;
+  }
+
+  /**
+   * Parses the object the tokener is positioned at.
+   *
+   * @param x tokener positioned at the start of a JSON object
+   * @return an object holding the selected fields found
+   * @throws JSONException if the input is not valid JSON
+   */
+  JSONObject parse(JSONTokener x) throws JSONException {
+    if (x.nextClean() != '{') {
+      throw x.syntaxError("A JSONObject text must begin with '{'");
+    }
+    JSONObject result = new JSONObject();
+    int remaining = fields.size();
+    while (remaining > 0) {
+      char c = x.nextClean();
+      if (c == 0) {
+        throw x.syntaxError("A JSONObject text must end with '}'");
+      } else if (c == '}') {
+        break;
+      } else if (c == ',') {
+        continue;
+      }
+      x.back();
+      String key = x.nextValue().toString();
+      if (x.nextClean() != ':') {
+        throw x.syntaxError("Expected a ':' after a key");
+      }
+
+      if (fields.contains(key)) {
+        remaining--;
+        if (x.nextClean() == '[') {
+          result.put(key, parseArray(x, remaining == 0));
+        } else {
+          x.back();
+          result.put(key, x.nextValue());
+        }
+      } else {
+        skipValue(x);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Parses the first elements of an array whose opening bracket has been read.
+   *
+   * @param last whether nothing is parsed after the array, so the remaining elements need not be skipped
+   */
+  private JSONArray parseArray(JSONTokener x, boolean last) throws JSONException {
+    JSONArray array = new JSONArray();
+    while (array.length() < maxElements) {
+      char c = x.nextClean();
+      if (c == ']') {
+        return array;
+      } else if (c == ',') {
+        continue;
+      } else if (c == 0) {
+        throw x.syntaxError("Expected a ',' or ']'");
+      }
+      x.back();
+      array.put(x.nextValue());
+    }
+    if (!last) {
+      skipNested(x);
+    }
+    return array;
+  }
+
+  /**
+   * Skips the next value: a string, a nested object or array, or a literal.
+   */
+  private static void skipValue(JSONTokener x) throws JSONException {
+    char c = x.nextClean();
+    if (c == '"' || c == '\'') {
+      x.nextString(c);
+    } else if (c == '{' || c == '[') {
+      skipNested(x);
+    } else {
+      while (c != 0 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+        c = x.next();
+      }
+      x.back();
+    }
+  }
+
+  /**
+   * Skips the rest of an object or array whose opening brace or bracket has been read.
+   */
+  private static void skipNested(JSONTokener x) throws JSONException {
+    int depth = 1;
+    while (depth > 0) {
+      char c = x.next();
+      if (c == 0) {
+        throw x.syntaxError("Unterminated object or array");
+      } else if (c == '"' || c == '\'') {
+        x.nextString(c);
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      }
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import org.jenkinsci.lib.dtkit.util.converter.ConversionException;
+import org.json.JSONObject;
+
+/**
+ * Reads and parses the provider files of test log items. Parent providers are shared by all "Test Log" nodes with the same parent, so the
+ * {@link TimingTable timings} built from them are kept in a cache with LRU eviction, shared by all items of a {@link TCLog}. The parsed documents
+ * are dropped as soon as their table has been built. All methods may be called from different threads at the same time.
+ */
+final class ProviderCache {
+
+  /**
+   * Default maximum number of timing tables kept
+   */
+  static final int DEFAULT_SIZE = 64;
+
+  private static final PartialJsonParser FIRST_ITEM_PARSER = new PartialJsonParser(Arrays.asList("caption", "items"), 1);
+
+  private final EntryStore store;
+  private final Map<String, FutureTask<TimingTable>> timings;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param store store holding the provider files
+   * @param size maximum number of timing tables kept
+   */
+  ProviderCache(EntryStore store, int size) {
+    this.store = store;
+    this.timings = createLRUMap(size);
+  }
+
+  private static <T> Map<String, T> createLRUMap(final int size) {
+    return new LinkedHashMap<String, T>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+        return size() > size;
+      }
+    };
+  }
+
+  /**
+   * Returns the timings of the children of the node owning the given provider file, reading and parsing the file only if its table is not cached.
+   *
+   * @param name name of the provider entry
+   * @return the timing table
+   * @throws ConversionException if the entry is not found or can not be parsed
+   */
+  TimingTable getTimings(String name) {
+    return compute(timings, name, () -> new TimingTable(load(name)));
+  }
+
+  /**
+   * Returns a cached value, computing it if not cached. The value is computed outside the lock of the cache, so different values are computed at the
+   * same time, while threads asking for the same value wait for the one computing it. Failures are not cached.
+   */
+  private <T> T compute(Map<String, FutureTask<T>> cache, String name, Callable<T> loader) {
+    FutureTask<T> task;
+    boolean owner = false;
+    synchronized (this) {
+      task = cache.get(name);
+      if (task == null) {
+        task = new FutureTask<>(loader);
+        cache.put(name, task);
+        owner = true;
+      }
+    }
+    if (owner) {
+      task.run();
+    }
+
+    try {
+      return task.get();
+    } catch (ExecutionException e) {
+      synchronized (this) {
+        if (cache.get(name) == task) {
+          cache.remove(name);
+        }
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ConversionException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ConversionException("Interrupted while reading '" + name + "'.", e);
+    }
+  }
+
+  /**
+   * Reads and parses the caption and the first item (the message of a test log) of a provider file bypassing the cache. Reading stops after the
+   * first item, so the rest of a long log is never read.
+   *
+   * @param name name of the provider entry
+   * @return the parsed document holding the fields "caption" and "items" (with at most one element) if found
+   * @throws ConversionException if the entry is not found or can not be parsed
+   */
+  JSONObject loadFirstItem(String name) {
+    return load(name, FIRST_ITEM_PARSER);
+  }
+
+  /**
+   * Reads and parses a provider file bypassing the cache.
+   *
+   * @param name name of the provider entry
+   * @return the parsed document
+   * @throws ConversionException if the entry is not found or can not be parsed
+   */
+  JSONObject load(String name) {
+    return load(name, null);
+  }
+
+  private JSONObject load(String name, PartialJsonParser parser) {
+    if (!store.containsEntry(name)) {
+      String message = "Invalid TestComplete MHT file. No entry with '" + name + "' found.";
+      throw new ConversionException(message);
+    }
+    try {
+      JSONObject document = MyUtils.parseJSONPEntry(store, name, "UTF-8", parser);
+      if (document == null) {
+        throw new ConversionException("Invalid TestComplete MHT file. No JSON data found in entry '" + name + "'.");
+      }
+      return document;
+    } catch (FileNotFoundException e) {
+      throw new ConversionException("File '" + name + "' not found.");
+    } catch (IOException e) {
+      throw new ConversionException("File '" + name + "' can not be read.");
+    }
+  }
+}
@@ -0,0 +1,342 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * {@link EntryStore} the entries of a MHT file are extracted into. Entries are kept in memory, on the heap or off the heap (direct buffers), as long
+ * as their total size stays within a budget. Once the budget is exceeded all entries are spilled into a temporary directory and the following
+ * entries are written straight into it. Entries may be added from several threads at the same time.<br>
+ * <br>
+ * The temporary directory is deleted by {@link #close()}.
+ */
+public class SpillingEntryStore implements EntryStore, Closeable {
+
+  /**
+   * Where entry data is kept
+   */
+  public enum Backend {
+    /**
+     * Byte arrays on the heap
+     */
+    HEAP,
+    /**
+     * Direct buffers outside of the heap. Entry data is copied into them chunk by chunk, it is never held on the heap.
+     */
+    OFF_HEAP,
+    /**
+     * Files in a temporary directory
+     */
+    DISK
+  }
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final Backend backend;
+  private final long memoryBudget;
+  private final AtomicLong memoryUsed = new AtomicLong();
+  /**
+   * Names of the entries being added or stored, to reject duplicates
+   */
+  private final Set<String> reservedNames = ConcurrentHashMap.newKeySet();
+  /**
+   * Names of the entries stored, published once their data is readable
+   */
+  private final Set<String> names = ConcurrentHashMap.newKeySet();
+  private final Map<String, ByteBuffer> entries = new ConcurrentHashMap<>();
+  private volatile File dir;
+
+  /**
+   * Creates an empty store.
+   *
+   * @param backend where entries are kept initially
+   * @param memoryBudget maximum number of bytes kept in memory before spilling to disk. Ignored for {@link Backend#DISK}.
+   */
+  public SpillingEntryStore(Backend backend, long memoryBudget) {
+    this.backend = backend;
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * @return where entry data is kept currently: the initial backend or {@link Backend#DISK} once spilled
+   */
+  public Backend getBackend() {
+    return dir != null ? Backend.DISK : backend;
+  }
+
+  /**
+   * Stores an entry unless an entry with the same name is stored already. The data is read completely but the stream is not closed.
+   *
+   * @param name name of the entry
+   * @param data data of the entry
+   * @return <code>true</code> if the entry was stored, <code>false</code> if an entry with the same name exists
+   * @throws IOException if an I/O error occurs
+   */
+  public boolean putEntry(String name, InputStream data) throws IOException {
+    if (!reservedNames.add(name)) {
+      return false;
+    }
+    storeEntry(name, data);
+    names.add(name);
+    return true;
+  }
+
+  private void storeEntry(String name, InputStream data) throws IOException {
+    ByteBuffer buf = null;
+    if (backend != Backend.DISK && dir == null) {
+      // Buffer in memory, but stop as soon as the budget is exceeded. Data
+      // kept off the heap is copied through a single chunk, so entries are
+      // never held on the heap completely
+      byte chunk[] = backend == Backend.OFF_HEAP ? new byte[CHUNK_SIZE] : null;
+      buf = allocate(CHUNK_SIZE);
+      int n;
+      do {
+        if (!buf.hasRemaining()) {
+          buf = grow(buf);
+        }
+        if (chunk == null) {
+          n = data.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+          if (n > 0) {
+            buf.position(buf.position() + n);
+          }
+        } else {
+          n = data.read(chunk, 0, Math.min(chunk.length, buf.remaining()));
+          if (n > 0) {
+            buf.put(chunk, 0, n);
+          }
+        }
+      } while (n >= 0 && memoryUsed.addAndGet(n) <= memoryBudget);
+      if (n >= 0) {
+        spill();
+      }
+      buf.flip();
+    }
+
+    synchronized (this) {
+      if (backend != Backend.DISK && dir == null) {
+        if (buf.hasArray() && buf.limit() != buf.capacity()) {
+          buf = ByteBuffer.wrap(Arrays.copyOf(buf.array(), buf.limit()));
+        }
+        entries.put(name, buf);
+        return;
+      }
+    }
+
+    if (dir == null) {
+      spill();
+    }
+    try (FileOutputStream out = new FileOutputStream(new File(dir, name))) {
+      if (buf != null) {
+        while (buf.hasRemaining()) {
+          out.getChannel().write(buf);
+        }
+      }
+      byte chunk[] = new byte[CHUNK_SIZE];
+      int n;
+      while ((n = data.read(chunk)) >= 0) {
+        out.write(chunk, 0, n);
+      }
+    }
+  }
+
+  private ByteBuffer allocate(int capacity) {
+    return backend == Backend.OFF_HEAP ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  /**
+   * @return a buffer of twice the capacity holding the data written into the given one
+   */
+  private ByteBuffer grow(ByteBuffer buf) {
+    ByteBuffer bigger = allocate(buf.capacity() * 2);
+    buf.flip();
+    bigger.put(buf);
+    return bigger;
+  }
+
+  /**
+   * Stores an entry with the same data as another entry stored before. Entries in memory share their data, files are hard linked if supported and
+   * copied otherwise.
+   *
+   * @param name name of the entry
+   * @param source name of an entry stored before whose data is shared
+   * @return <code>true</code> if the entry was stored, <code>false</code> if an entry with the same name exists
+   * @throws IOException if an I/O error occurs
+   */
+  public boolean copyEntry(String name, String source) throws IOException {
+    if (!reservedNames.add(name)) {
+      return false;
+    }
+    copyEntryData(name, source);
+    names.add(name);
+    return true;
+  }
+
+  private void copyEntryData(String name, String source) throws IOException {
+    synchronized (this) {
+      ByteBuffer buf = entries.get(source);
+      if (buf != null) {
+        entries.put(name, buf);
+        return;
+      }
+    }
+
+    linkOrCopy(new File(dir, source), new File(dir, name));
+  }
+
+  private static void linkOrCopy(File source, File out) throws IOException {
+    try {
+      Files.createLink(out.toPath(), source.toPath());
+    } catch (IOException | UnsupportedOperationException e) {
+      FileUtils.copyFile(source, out);
+    }
+  }
+
+  @Override
+  public boolean containsEntry(String name) {
+    return names.contains(name);
+  }
+
+  @Override
+  public InputStream openEntry(String name) throws IOException {
+    if (!names.contains(name)) {
+      return null;
+    }
+    synchronized (this) {
+      ByteBuffer buf = entries.get(name);
+      if (buf != null) {
+        return new ByteBufferInputStream(buf.duplicate());
+      }
+    }
+    return new FileInputStream(new File(dir, name));
+  }
+
+  /**
+   * Returns a directory holding every entry as a file named after the entry, spilling entries kept in memory if needed.
+   *
+   * @return the directory, deleted by {@link #close()}
+   * @throws IOException if an I/O error occurs
+   */
+  public File toDirectory() throws IOException {
+    spill();
+    return dir;
+  }
+
+  /**
+   * Moves all entries kept in memory into the temporary directory, creating it if needed. Entries added afterwards are written into the directory.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  private synchronized void spill() throws IOException {
+    if (dir == null) {
+      File newDir = Files.createTempDirectory("tc11-mht").toFile();
+      Map<ByteBuffer, File> written = new IdentityHashMap<>();
+      for (Map.Entry<String, ByteBuffer> entry : entries.entrySet()) {
+        File out = new File(newDir, entry.getKey());
+        File shared = written.putIfAbsent(entry.getValue(), out);
+        if (shared != null) {
+          linkOrCopy(shared, out);
+          continue;
+        }
+        try (FileOutputStream fos = new FileOutputStream(out)) {
+          ByteBuffer buf = entry.getValue().duplicate();
+          fos.getChannel().write(buf);
+        }
+      }
+      entries.clear();
+      dir = newDir;
+    }
+  }
+
+  /**
+   * Releases the entries kept in memory and deletes the temporary directory.
+   *
+   * @throws IOException if the directory can not be deleted
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    entries.clear();
+    names.clear();
+    reservedNames.clear();
+    if (dir != null) {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+
+  /**
+   * Stream of the remaining bytes of a buffer
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buf;
+
+    ByteBufferInputStream(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? buf.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buf.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buf.remaining());
+      buf.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+      buf.position(buf.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buf.remaining();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Table of the values shared by the items of a conversion. Test logs repeat the same unit names, message types, call stack frames and complete call
+ * stacks over and over, so every distinct value is kept once and equal values are replaced by the one kept. Values must be immutable. The table may
+ * be used from different threads at the same time.
+ */
+final class StringTable {
+
+  private final ConcurrentMap<Object, Object> values = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the value kept in this table equal to the given value, adding the given value if there is none.
+   *
+   * @param <T> type of the value
+   * @param value an immutable value or <code>null</code>
+   * @return the value kept, <code>null</code> if <code>value</code> is <code>null</code>
+   */
+  @SuppressWarnings("unchecked")
+  <T> T intern(T value) {
+    if (value == null) {
+      return null;
+    }
+    Object kept = values.putIfAbsent(value, value);
+    return kept != null ? (T) kept : value;
+  }
+
+  /**
+   * @return number of distinct values kept
+   */
+  int size() {
+    return values.size();
+  }
+}
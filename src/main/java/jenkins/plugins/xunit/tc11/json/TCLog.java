@@ -23,12 +23,17 @@
 package jenkins.plugins.xunit.tc11.json;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -46,15 +51,48 @@ public class TCLog {
   private List<TCLog> providers_;
   private boolean empty_;
   private List<TCLogItem> tcLogItems_;
-  private final File tempDir_;
-  private Map<String, List<JSONObject>> jsItems_;
+  private final ProviderCache providerCache_;
+  private final StringTable strings_ = new StringTable();
+  private final TcDateTimeFormat dateTimeFormat_ = new TcDateTimeFormat();
+
+  /**
+   * A "Test Log" node found in the log tree
+   */
+  private static final class TestLogNode {
+
+    final JSONObject owner;
+    final JSONObject child;
+    final int index;
+
+    TestLogNode(JSONObject owner, JSONObject child, int index) {
+      this.owner = owner;
+      this.child = child;
+      this.index = index;
+    }
+  }
 
   public TCLog(JSONObject obj, File inputTempDir) {
-    this.tempDir_ = inputTempDir;
-    initialize(obj);
+    this(obj, new DirectoryEntryStore(inputTempDir));
   }
 
-  private void initialize(JSONObject obj) {
+  public TCLog(JSONObject obj, EntryStore store) {
+    this(obj, store, 1);
+  }
+
+  /**
+   * Creates the log of a JSON object. The items of the log are independent of each other, so up to <code>parallelism</code> items are created (their
+   * provider files read and parsed) at the same time on a dedicated {@link ForkJoinPool}. Items keep the same order whatever the parallelism.
+   *
+   * @param obj JSON object of <i>_root.js</i>
+   * @param store store holding the provider files
+   * @param parallelism maximum number of items created at the same time. With 1 items are created in the calling thread.
+   */
+  public TCLog(JSONObject obj, EntryStore store, int parallelism) {
+    this.providerCache_ = new ProviderCache(store, ProviderCache.DEFAULT_SIZE);
+    initialize(obj, parallelism);
+  }
+
+  private void initialize(JSONObject obj, int parallelism) {
     if (obj.has("name")) {
       this.name_ = obj.getString("name");
     } else {
@@ -75,47 +113,183 @@ public class TCLog {
     } else {
       this.id_ = "";
     }
-    this.jsItems_ = new HashMap<>();
     this.tcLogItems_ = new ArrayList<>();
-    lookForJSONObjectsByName(obj, "Test Log");
-    final Set<Map.Entry<String, List<JSONObject>>> entries = this.jsItems_.entrySet();
-    for (Map.Entry<String, List<JSONObject>> entry : entries) {
-      List<JSONObject> list = entry.getValue();
-      if (list != null) {
-        JSONObject owner = list.get(0);
-        JSONObject child = list.get(1);
-
-        this.addTCLogItem(new TCLogItem(owner, child, this.tempDir_));
-      }
+    TestLogNode[] nodes = lookForJSONObjectsByName(obj, "Test Log");
+    for (TCLogItem item : createTCLogItems(nodes, parallelism)) {
+      this.addTCLogItem(item);
     }
     this.empty_ = this.tcLogItems_.isEmpty();
   }
 
-  private void lookForJSONObjectsByName(JSONObject obj, String name) {
+  /**
+   * Creates the items of the given nodes in their order. If creating several items fails, the exception of the first one in the order of
+   * <code>nodes</code> is thrown, after all running tasks have finished.
+   */
+  private List<TCLogItem> createTCLogItems(TestLogNode[] nodes, int parallelism) {
+    List<TCLogItem> items = new ArrayList<>(nodes.length);
+    if (parallelism <= 1 || nodes.length <= 1) {
+      for (TestLogNode node : nodes) {
+        items.add(new TCLogItem(node.owner, node.child, node.index, this.providerCache_, this.strings_, this.dateTimeFormat_));
+      }
+      return items;
+    }
 
-    JSONArray jsonArray = obj.getJSONArray("children");
-    if (jsonArray.length() > 0) {
-      for (int i = 0, size = jsonArray.length(); i < size; i++) {
-        JSONObject js;
-        js = jsonArray.optJSONObject(i);
-        if (js.has("name") && js.getString("name").contains(name)) {
-          List<JSONObject> list = new ArrayList<JSONObject>();
-          list.add(obj);
-          list.add(js);
-          this.jsItems_.put(js.getString("name"), list);
-        } else {
-          lookForJSONObjectsByName(js, name);
+    ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, nodes.length));
+    try {
+      List<ItemTask> tasks = new ArrayList<>(nodes.length);
+      for (TestLogNode node : nodes) {
+        tasks.add(new ItemTask(node, this.providerCache_, this.strings_, this.dateTimeFormat_));
+      }
+      for (ItemTask task : tasks) {
+        pool.execute(task);
+      }
+      for (ItemTask task : tasks) {
+        task.join();
+        if (task.failure != null) {
+          throw task.failure;
         }
+        items.add(task.result);
       }
-    } else {
+      return items;
+    } finally {
+      pool.shutdownNow();
+      try {
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Task creating the item of a single node. Failures are kept as they are, so they are thrown unchanged by the thread waiting for the task.
+   */
+  private static final class ItemTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TestLogNode node;
+    private final ProviderCache providers;
+    private final StringTable strings;
+    private final TcDateTimeFormat dates;
+    private TCLogItem result;
+    private RuntimeException failure;
+
+    ItemTask(TestLogNode node, ProviderCache providers, StringTable strings, TcDateTimeFormat dates) {
+      this.node = node;
+      this.providers = providers;
+      this.strings = strings;
+      this.dates = dates;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        result = new TCLogItem(node.owner, node.child, node.index, providers, strings, dates);
+      } catch (RuntimeException e) {
+        failure = e;
+      }
+    }
+  }
+
+  /**
+   * Looks for the nodes whose name contains the given name. The tree is walked in document order with an explicit stack, so deeply nested logs
+   * do not overflow the call stack. Nodes found are not descended into. Nodes are identified by their id, a node whose id has already been found is
+   * skipped.
+   *
+   * @param obj root of the tree
+   * @param name part of the names of the nodes to look for
+   * @return the nodes found in document order
+   */
+  private static TestLogNode[] lookForJSONObjectsByName(JSONObject obj, String name) {
+    List<TestLogNode> nodes = new ArrayList<>();
+    Set<String> ids = new HashSet<>();
+
+    JSONArray jsonArray = obj.getJSONArray("children");
+    if (jsonArray.length() == 0) {
       // persume it is a Test Log itself
       if (obj.has("name") && obj.getString("name").contains(name)) {
-        List<JSONObject> list = new ArrayList<JSONObject>();
-        list.add(null);
-        list.add(obj);
-        this.jsItems_.put(obj.getString("name"), list);
+        nodes.add(new TestLogNode(null, obj, -1));
+      }
+      return nodes.toArray(new TestLogNode[nodes.size()]);
+    }
+
+    // Stack of the nodes being walked, their children and the index of the
+    // next child to visit
+    JSONObject parents[] = new JSONObject[16];
+    JSONArray children[] = new JSONArray[16];
+    int next[] = new int[16];
+    parents[0] = obj;
+    children[0] = jsonArray;
+    int depth = 1;
+
+    while (depth > 0) {
+      int top = depth - 1;
+      int i = next[top];
+      if (i >= children[top].length()) {
+        parents[top] = null;
+        children[top] = null;
+        depth--;
+        continue;
+      }
+      next[top] = i + 1;
+
+      JSONObject js = children[top].optJSONObject(i);
+      if (js == null) {
+        continue;
+      }
+      if (js.has("name") && js.getString("name").contains(name)) {
+        if (!js.has("id") || ids.add(js.optString("id"))) {
+          nodes.add(new TestLogNode(parents[top], js, i));
+        }
+      } else {
+        if (depth == parents.length) {
+          parents = Arrays.copyOf(parents, depth * 2);
+          children = Arrays.copyOf(children, depth * 2);
+          next = Arrays.copyOf(next, depth * 2);
+        }
+        parents[depth] = js;
+        children[depth] = js.getJSONArray("children");
+        next[depth] = 0;
+        depth++;
+      }
+    }
+    return nodes.toArray(new TestLogNode[nodes.size()]);
+  }
+
+  /**
+   * Returns the names of all MHT entries referenced by providers of the given JSON object or any of its descendants. These are all entries read
+   * when a {@link TCLog} is created for the object.
+   *
+   * @param obj JSON object of <i>_root.js</i>
+   * @return names of the referenced entries
+   */
+  public static Set<String> getReferencedEntryNames(JSONObject obj) {
+    Set<String> names = new HashSet<>();
+    Deque<JSONObject> pending = new ArrayDeque<>();
+    pending.push(obj);
+    while (!pending.isEmpty()) {
+      JSONObject node = pending.pop();
+      JSONArray providers = node.optJSONArray("providers");
+      if (providers != null) {
+        for (int i = 0; i < providers.length(); i++) {
+          JSONObject provider = providers.optJSONObject(i);
+          if (provider != null && provider.has("href")) {
+            names.add(TCLogItem.getEntryName(provider.getString("href")));
+          }
+        }
+      }
+      JSONArray children = node.optJSONArray("children");
+      if (children != null) {
+        for (int i = 0; i < children.length(); i++) {
+          JSONObject child = children.optJSONObject(i);
+          if (child != null) {
+            pending.push(child);
+          }
+        }
       }
     }
+    return names;
   }
 
   /**
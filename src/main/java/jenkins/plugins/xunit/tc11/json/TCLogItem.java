@@ -23,17 +23,14 @@
 package jenkins.plugins.xunit.tc11.json;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.FileFilterUtils;
-import org.jenkinsci.lib.dtkit.util.converter.ConversionException;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -44,33 +41,78 @@ import org.json.JSONObject;
  */
 public class TCLogItem {
 
+  /**
+   * Value of the date time fields if the log holds no such time
+   */
+  private static final long NO_TIME = Long.MIN_VALUE;
+  /**
+   * Value of the date time fields if the date time string of the log can not be parsed
+   */
+  private static final long INVALID_TIME = Long.MIN_VALUE + 1;
+
   private String name_;
   private int status_;
   private String id_;
   private String message_;
   private long testTimeInMilliSec_;
-  private String testTime_;
+  /**
+   * Date time strings of the log are kept parsed (in milli seconds) and formatted on demand
+   */
+  private long testTime_ = NO_TIME;
   private String type_;
   private String caption_;
   private String info_;
   private long runTime_;
   private long endTimeInMilliSec_;
-  private String endTime_;
+  private long endTime_ = NO_TIME;
   private long startTimeInMilliSec_;
-  private String startTime_;
-  private List<Map<String, String>> callStack_;
+  private long startTime_ = NO_TIME;
+  /**
+   * Whether the start time is the test time, reported in the layout of the log
+   */
+  private boolean startTimeIsTestTime_;
+  private List<CallStackFrame> callStack_;
+  private List<String> pictures_;
+  private final TcDateTimeFormat dates_;
 
+  /**
+   * Creates a test log item reading the provider files from a directory.
+   *
+   * @deprecated The directory is listed for every item, use {@link #TCLogItem(JSONObject, JSONObject, EntryStore)} with a store shared by all
+   * items instead
+   */
+  @Deprecated
   public TCLogItem(JSONObject parent, JSONObject obj, File inputTempDir) {
+    this(parent, obj, new DirectoryEntryStore(inputTempDir));
+  }
+
+  public TCLogItem(JSONObject parent, JSONObject obj, EntryStore store) {
+    this(parent, obj, indexOfChild(parent, obj), new ProviderCache(store, 1), new StringTable(), new TcDateTimeFormat());
+  }
+
+  /**
+   * Creates a test log item reading the provider files through a cache shared with other items.
+   *
+   * @param parent JSON object owning the test log or <code>null</code>
+   * @param obj JSON object of the test log
+   * @param index position of the test log among the children of the parent, its timings are found at this position in the provider files of the
+   * parent
+   * @param providers cache of the parsed provider files
+   * @param strings table of the values shared with other items (captions, message types, call stacks, ...)
+   * @param dates format of the date time strings of the log, shared with other items
+   */
+  TCLogItem(JSONObject parent, JSONObject obj, int index, ProviderCache providers, StringTable strings, TcDateTimeFormat dates) {
     this.info_ = "";
     this.caption_ = "";
     this.type_ = "";
-    this.testTime_ = "";
     this.testTimeInMilliSec_ = 0;
     this.message_ = "";
     this.status_ = 0;
     this.name_ = "";
     this.id_ = "";
-    this.callStack_ = new ArrayList<>();
+    this.callStack_ = Collections.emptyList();
+    this.pictures_ = Collections.emptyList();
+    this.dates_ = dates;
 
     if (obj.has("name")) {
       this.name_ = obj.getString("name");
@@ -86,79 +128,65 @@ public class TCLogItem {
       for (int i = 0; i < jsArray.length(); i++) {
         JSONObject jsObject = jsArray.optJSONObject(i);
         if (jsObject.has("href")) {
-          String filename = jsObject.getString("href");
-          filename = filename.substring(filename.lastIndexOf("/") + 1).toLowerCase(Locale.ENGLISH);
+          String filename = getEntryName(jsObject.getString("href"));
 
-          Collection<File> jsFiles = FileUtils.listFiles(inputTempDir, FileFilterUtils.nameFileFilter(filename), null);
-          if (jsFiles.isEmpty()) {
-            String message = "Invalid TestComplete MHT file. No entry with '" + filename + "' found.";
-            throw new ConversionException(message);
+          JSONObject tmpObject = providers.loadFirstItem(filename);
+          if (tmpObject.has("caption")) {
+            this.caption_ = strings.intern(tmpObject.getString("caption"));
           }
-          File jsFile = jsFiles.iterator().next();
-          try {
-            String fileContent = MyUtils.readJSONFile(jsFile, "UTF-8");
-            int start = fileContent.indexOf('(');
-            int end = fileContent.length() - 1;
-            fileContent = fileContent.substring(start + 1, end);
-
-            String jsonRaw = fileContent.substring(fileContent.indexOf(',') + 1);
-            JSONObject tmpObject = new JSONObject(jsonRaw);
-            if (tmpObject.has("caption")) {
-              this.caption_ = tmpObject.getString("caption");
-            }
-            if (tmpObject.has("items")) {
-              JSONArray items = tmpObject.getJSONArray("items");
-
-              JSONObject obj2 = items.optJSONObject(0);
-              if (obj2 != null) {
-                if (obj2.has("Message")) {
-                  String str = obj2.getString("Message");
-                  this.message_ = str;
-                }
-                if (obj2.has("AdditionalInfo")) {
-                  JSONObject info = obj2.getJSONObject("AdditionalInfo");
-                  if (!info.getBoolean("isfilename")) {
-                    this.info_ = info.getString("text");
-                  }
+          if (tmpObject.has("items")) {
+            JSONArray items = tmpObject.getJSONArray("items");
+
+            JSONObject obj2 = items.optJSONObject(0);
+            if (obj2 != null) {
+              if (obj2.has("Message")) {
+                this.message_ = obj2.getString("Message");
+              }
+              if (obj2.has("AdditionalInfo")) {
+                JSONObject info = obj2.getJSONObject("AdditionalInfo");
+                if (!info.getBoolean("isfilename")) {
+                  this.info_ = info.getString("text");
                 }
-                if (obj2.has("CallStack")) {
-                  JSONObject callStack = obj2.getJSONObject("CallStack");
-                  JSONArray callStackItems = callStack.optJSONArray("items");
-                  for (int j = 0; j < callStackItems.length(); j++) {
-                    JSONObject js = callStackItems.optJSONObject(j);
-                    if (js != null) {
-                      Map<String, String> cs = new HashMap<>();
-                      if (js.has("UnitName")) {
-                        cs.put("Unit", js.getString("UnitName"));
-                      } else {
-                        cs.put("Unit", "");
-                      }
-                      cs.put("Line", Integer.toString(js.getInt("LineNo")));
-                      cs.put("Test", js.getString("Test"));
-                      this.callStack_.add(cs);
-                    }
+              }
+              if (obj2.has("CallStack")) {
+                JSONObject callStack = obj2.getJSONObject("CallStack");
+                JSONArray callStackItems = callStack.optJSONArray("items");
+                List<CallStackFrame> frames = new ArrayList<>(callStackItems.length());
+                for (int j = 0; j < callStackItems.length(); j++) {
+                  JSONObject js = callStackItems.optJSONObject(j);
+                  if (js != null) {
+                    String unit = js.has("UnitName") ? strings.intern(js.getString("UnitName")) : "";
+                    frames.add(strings.intern(new CallStackFrame(unit, js.getInt("LineNo"), strings.intern(js.getString("Test")))));
                   }
                 }
-                if (obj2.has("Time")) {
-                  JSONObject time = obj2.getJSONObject("Time");
-                  this.testTimeInMilliSec_ = time.getLong("msec");
-                  this.testTime_ = time.getString("text");
-                } else {
-                  this.testTimeInMilliSec_ = 0;
-                  this.testTime_ = "";
+                if (!frames.isEmpty()) {
+                  this.callStack_ = strings.intern(Collections.unmodifiableList(Arrays.asList(frames.toArray(new CallStackFrame[frames.size()]))));
                 }
-                if (obj2.has("TypeDescription")) {
-                  String str = obj2.getString("TypeDescription");
-                  this.type_ = str;
-                } else {
-                  this.type_ = "";
+              }
+              JSONArray pictures = obj2.optJSONArray("Picture");
+              if (pictures != null) {
+                this.pictures_ = new ArrayList<>(pictures.length());
+                for (int j = 0; j < pictures.length(); j++) {
+                  JSONObject picture = pictures.optJSONObject(j);
+                  if (picture != null && picture.has("Picture")) {
+                    this.pictures_.add(getEntryName(picture.getString("Picture")));
+                  }
                 }
               }
+              if (obj2.has("Time")) {
+                JSONObject time = obj2.getJSONObject("Time");
+                this.testTimeInMilliSec_ = time.getLong("msec");
+                this.testTime_ = parseTime(dates, time.getString("text"));
+              } else {
+                this.testTimeInMilliSec_ = 0;
+                this.testTime_ = NO_TIME;
+              }
+              if (obj2.has("TypeDescription")) {
+                this.type_ = strings.intern(obj2.getString("TypeDescription"));
+              } else {
+                this.type_ = "";
+              }
             }
-          } catch (FileNotFoundException e) {
-            throw new ConversionException("File '" + jsFile.getName() + "' not found.");
-          } catch (IOException e) {
-            throw new ConversionException("File '" + jsFile.getName() + "' can not be read.");
           }
         }
       }
@@ -171,61 +199,75 @@ public class TCLogItem {
       for (int i = 0; i < jsArray.length(); i++) {
         JSONObject jsObject = jsArray.optJSONObject(i);
         if (jsObject.has("href")) {
-          String filename = jsObject.getString("href");
-          filename = filename.substring(filename.lastIndexOf("/") + 1).toLowerCase(Locale.ENGLISH);
+          String filename = getEntryName(jsObject.getString("href"));
 
-          Collection<File> jsFiles = FileUtils.listFiles(inputTempDir, FileFilterUtils.nameFileFilter(filename), null);
-          if (jsFiles.isEmpty()) {
-            String message = "Invalid TestComplete MHT file. No entry with '" + filename + "' found.";
-            throw new ConversionException(message);
-          }
-          File jsFile = jsFiles.iterator().next();
-          try {
-            String fileContent = MyUtils.readJSONFile(jsFile, "UTF-8");
-            int start = fileContent.indexOf('(');
-            int end = fileContent.length() - 1;
-            fileContent = fileContent.substring(start + 1, end);
-
-            String jsonRaw = fileContent.substring(fileContent.indexOf(',') + 1);
-            JSONObject tmpObject = new JSONObject(jsonRaw);
-            if (tmpObject.has("items")) {
-              JSONArray items = tmpObject.getJSONArray("items");
-              for (int j = 0; j < items.length(); j++) {
-                JSONObject js = items.optJSONObject(j);
-
-                if (js.has("StartTime")) {
-                  JSONObject startTime = js.getJSONObject("StartTime");
-                  this.startTime_ = MyUtils.convertTc2DateTime(startTime.getString("text"));
-                  this.startTimeInMilliSec_ = startTime.getLong("msec");
-                }
-                if (js.has("EndTime")) {
-                  JSONObject endTime = js.getJSONObject("EndTime");
-                  this.endTime_ = MyUtils.convertTc2DateTime(endTime.getString("text"));
-                  this.endTimeInMilliSec_ = endTime.getLong("msec");
-                }
-                if (js.has("RunTime")) {
-                  JSONObject runTime = js.getJSONObject("RunTime");
-                  this.runTime_ = runTime.getLong("msec");
-                }
-              }
+          TimingTable timings = providers.getTimings(filename);
+          if (index >= 0 && index < timings.size()) {
+            if (timings.getStartTime(index) != null) {
+              this.startTime_ = parseTime(dates, timings.getStartTime(index));
+              this.startTimeInMilliSec_ = timings.getStartTimeInMilliSec(index);
+            }
+            if (timings.getEndTime(index) != null) {
+              this.endTime_ = parseTime(dates, timings.getEndTime(index));
+              this.endTimeInMilliSec_ = timings.getEndTimeInMilliSec(index);
+            }
+            if (timings.getRunTime(index) >= 0) {
+              this.runTime_ = timings.getRunTime(index);
             }
-
-          } catch (FileNotFoundException e) {
-            throw new ConversionException("File '" + jsFile.getName() + "' not found.");
-          } catch (IOException e) {
-            throw new ConversionException("File '" + jsFile.getName() + "' can not be read.");
           }
         }
       }
     } else {
       this.startTime_ = this.testTime_;
-      this.startTimeInMilliSec_ = MyUtils.convertTcDateTime2MillSec(this.testTime_);
+      this.startTimeIsTestTime_ = true;
+      this.startTimeInMilliSec_ = isTime(this.testTime_) ? this.testTime_ : 0;
       this.runTime_ = 0;
 
     }
 
   }
 
+  private static long parseTime(TcDateTimeFormat dates, String text) {
+    ZonedDateTime dateTime = dates.parse(text);
+    return dateTime != null ? dateTime.toInstant().toEpochMilli() : INVALID_TIME;
+  }
+
+  private static boolean isTime(long time) {
+    return time != NO_TIME && time != INVALID_TIME;
+  }
+
+  /**
+   * @return the time formatted for the report, an empty string if invalid or <code>null</code> if not available
+   */
+  private static String toReportDateTime(long time) {
+    if (time == NO_TIME) {
+      return null;
+    }
+    return isTime(time) ? TcDateTimeFormat.toReportDateTime(time) : "";
+  }
+
+  private static int indexOfChild(JSONObject parent, JSONObject obj) {
+    JSONArray children = parent != null ? parent.optJSONArray("children") : null;
+    if (children != null) {
+      for (int i = 0; i < children.length(); i++) {
+        if (children.opt(i) == obj) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the name of the MHT entry a provider reference points to: the last part of its path in lower case.
+   *
+   * @param href reference of a provider (e.g. <i>_logs/id.js</i>)
+   * @return the entry name
+   */
+  static String getEntryName(String href) {
+    return href.substring(href.lastIndexOf("/") + 1).toLowerCase(Locale.ENGLISH);
+  }
+
   /**
    * @return The name of the test log item
    */
@@ -314,7 +356,7 @@ public class TCLogItem {
    * @return The date and time of the test item
    */
   public String getTestTime() {
-    return testTime_;
+    return isTime(testTime_) ? dates_.format(testTime_) : "";
   }
 
   /**
@@ -322,7 +364,7 @@ public class TCLogItem {
    * @return The starting time of the test suit
    */
   public String getTimeStamp() {
-    return this.startTime_;
+    return this.startTimeIsTestTime_ ? getTestTime() : toReportDateTime(this.startTime_);
   }
 
   /**
@@ -330,7 +372,7 @@ public class TCLogItem {
    * @return The ending time of the test suit
    */
   public String getEndTime() {
-    return this.endTime_;
+    return toReportDateTime(this.endTime_);
   }
 
   /**
@@ -350,10 +392,37 @@ public class TCLogItem {
   }
 
   /**
+   * Returns the call stack as maps with the keys "Unit", "Line" and "Test". The maps are created on every call.
    *
-   * @return CallStack from the testcase in case of the state error or an empty string
+   * @return CallStack from the testcase in case of the state error or an empty list
+   * @deprecated Use {@link #getCallStackFrames()} instead
    */
+  @Deprecated
   public List<Map<String, String>> getCallStack() {
+    List<Map<String, String>> callStack = new ArrayList<>(this.callStack_.size());
+    for (CallStackFrame frame : this.callStack_) {
+      Map<String, String> cs = new HashMap<>();
+      cs.put("Unit", frame.getUnit());
+      cs.put("Line", Integer.toString(frame.getLine()));
+      cs.put("Test", frame.getTest());
+      callStack.add(cs);
+    }
+    return callStack;
+  }
+
+  /**
+   *
+   * @return CallStack from the testcase in case of the state error or an empty list. The list can not be modified and may be shared with other items.
+   */
+  public List<CallStackFrame> getCallStackFrames() {
     return this.callStack_;
   }
+
+  /**
+   *
+   * @return Names of the MHT entries of the pictures attached to the message of the testcase (e.g. screenshots of an error)
+   */
+  public List<String> getPictures() {
+    return this.pictures_;
+  }
 }
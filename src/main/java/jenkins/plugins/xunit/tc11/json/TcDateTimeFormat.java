@@ -0,0 +1,188 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.plugins.xunit.tc11.TestCompleteInputMetric;
+
+/**
+ * Parses the date time strings of TestComplete logs and formats times for the JUnit report. TestComplete writes dates in the layout of the locale
+ * of the test machine: 'MM/dd/yyyy hh:mm:ss aa', 'dd/MM/yyyy HH:mm:ss' or 'dd.MM.yyyy HH:mm:ss'. A log uses the same layout all over, so the layout
+ * is detected once and remembered; it is only detected again for a string that does not match it. Layouts are checked by scanning the string, not
+ * by regular expressions, and all formatters are immutable, so an instance may be used from different threads at the same time.
+ */
+final class TcDateTimeFormat {
+
+  /**
+   * Date time layouts written by TestComplete
+   */
+  private enum Layout {
+
+    US("M/d/yyyy h:m:s a", "MM/dd/yyyy hh:mm:ss a", '/', true),
+    SLASH("d/M/yyyy H:m:s", "dd/MM/yyyy HH:mm:ss", '/', false),
+    DOTS("d.M.yyyy H:m:s", "dd.MM.yyyy HH:mm:ss", '.', false);
+
+    private final DateTimeFormatter formatter;
+    private final DateTimeFormatter printer;
+    private final char dateSeparator;
+    private final boolean ampm;
+
+    Layout(String pattern, String printPattern, char dateSeparator, boolean ampm) {
+      this.formatter = DateTimeFormatter.ofPattern(pattern, Locale.US).withResolverStyle(ResolverStyle.LENIENT);
+      this.printer = DateTimeFormatter.ofPattern(printPattern, Locale.US);
+      this.dateSeparator = dateSeparator;
+      this.ampm = ampm;
+    }
+
+    /**
+     * Checks whether the given string is made of numbers and separators of this layout, without checking the values of the numbers.
+     */
+    boolean matches(String s) {
+      int p = number(s, 0);
+      p = number(s, separator(s, p, dateSeparator));
+      p = number(s, separator(s, p, dateSeparator));
+      p = number(s, separator(s, p, ' '));
+      p = number(s, separator(s, p, ':'));
+      p = number(s, separator(s, p, ':'));
+      if (ampm) {
+        p = separator(s, p, ' ');
+        if (p < 0 || p + 2 != s.length() || !(s.startsWith("AM", p) || s.startsWith("PM", p))) {
+          return false;
+        }
+        p += 2;
+      }
+      return p == s.length();
+    }
+
+    private static int number(String s, int p) {
+      if (p < 0 || p >= s.length() || !isDigit(s.charAt(p))) {
+        return -1;
+      }
+      while (p < s.length() && isDigit(s.charAt(p))) {
+        p++;
+      }
+      return p;
+    }
+
+    private static int separator(String s, int p, char c) {
+      return p >= 0 && p < s.length() && s.charAt(p) == c ? p + 1 : -1;
+    }
+
+    private static boolean isDigit(char c) {
+      return c >= '0' && c <= '9';
+    }
+  }
+
+  private static final DateTimeFormatter REPORT_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+
+  private volatile Layout layout;
+
+  /**
+   * Parses a TestComplete date time string in the default time zone. Times in a gap of the time zone are moved forward, ambiguous times get the later
+   * offset, the same as with {@link java.text.SimpleDateFormat}.
+   *
+   * @param text date time string in one of the TestComplete layouts
+   * @return the date time or <code>null</code> if the string is empty or does not match any layout
+   */
+  ZonedDateTime parse(String text) {
+    if (text == null || text.isEmpty()) {
+      return null;
+    }
+    Layout l = layout;
+    if (l == null || !l.matches(text)) {
+      l = detect(text);
+      if (l == null) {
+        return null;
+      }
+      layout = l;
+    }
+    try {
+      return LocalDateTime.parse(text, l.formatter).atZone(ZoneId.systemDefault()).withLaterOffsetAtOverlap();
+    } catch (DateTimeException ex) {
+      Logger.getLogger(TestCompleteInputMetric.class.getName()).log(Level.SEVERE, "[TC11 - xUnit] - {0}", ex);
+      return null;
+    }
+  }
+
+  private static Layout detect(String text) {
+    for (Layout l : Layout.values()) {
+      if (l.matches(text)) {
+        return l;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Converts a TestComplete date time string to the format of the report.
+   *
+   * @param text date time string in one of the TestComplete layouts
+   * @return date time string formated as 'yyyy-MM-ddTHH:mm:ss.SSS' or an empty string if the string can not be parsed
+   */
+  String toReportDateTime(String text) {
+    ZonedDateTime dateTime = parse(text);
+    return dateTime != null ? REPORT_FORMATTER.format(dateTime) : "";
+  }
+
+  /**
+   * Converts a TestComplete date time string in the default time zone to a time in milli seconds.
+   *
+   * @param text date time string in one of the TestComplete layouts
+   * @return time in milli seconds or 0 if the string can not be parsed
+   */
+  long toMilliSec(String text) {
+    ZonedDateTime dateTime = parse(text);
+    return dateTime != null ? dateTime.toInstant().toEpochMilli() : 0;
+  }
+
+  /**
+   * Formats a time in the default time zone in the layout of the log, the layout of the strings parsed before (the day first with dots if none
+   * has been parsed yet).
+   *
+   * @param msec time in milli seconds
+   * @return date time string in the TestComplete layout, e.g. 'dd.MM.yyyy HH:mm:ss'
+   */
+  String format(long msec) {
+    Layout l = layout;
+    return (l != null ? l : Layout.DOTS).printer.format(Instant.ofEpochMilli(msec).atZone(ZoneId.systemDefault()));
+  }
+
+  /**
+   * Formats a time in the default time zone for the report.
+   *
+   * @param msec time in milli seconds
+   * @return date time string formated as 'yyyy-MM-ddTHH:mm:ss.SSS'
+   */
+  static String toReportDateTime(long msec) {
+    return REPORT_FORMATTER.format(Instant.ofEpochMilli(msec).atZone(ZoneId.systemDefault()));
+  }
+}
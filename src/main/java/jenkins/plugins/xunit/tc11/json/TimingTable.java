@@ -0,0 +1,108 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Timings of the children of a log node, taken from the provider file of the node. The provider holds one item per child, in the order of the
+ * children, so the timings of a child are found by its position.
+ */
+final class TimingTable {
+
+  private final String startTime[];
+  private final long startTimeInMilliSec[];
+  private final String endTime[];
+  private final long endTimeInMilliSec[];
+  private final long runTime[];
+
+  /**
+   * Builds the table from the items of a parsed provider file.
+   *
+   * @param provider parsed provider file
+   */
+  TimingTable(JSONObject provider) {
+    JSONArray items = provider.optJSONArray("items");
+    int size = items != null ? items.length() : 0;
+    startTime = new String[size];
+    startTimeInMilliSec = new long[size];
+    endTime = new String[size];
+    endTimeInMilliSec = new long[size];
+    runTime = new long[size];
+
+    for (int i = 0; i < size; i++) {
+      runTime[i] = -1;
+      JSONObject js = items.optJSONObject(i);
+      if (js == null) {
+        continue;
+      }
+      if (js.has("StartTime")) {
+        JSONObject time = js.getJSONObject("StartTime");
+        startTime[i] = time.getString("text");
+        startTimeInMilliSec[i] = time.getLong("msec");
+      }
+      if (js.has("EndTime")) {
+        JSONObject time = js.getJSONObject("EndTime");
+        endTime[i] = time.getString("text");
+        endTimeInMilliSec[i] = time.getLong("msec");
+      }
+      if (js.has("RunTime")) {
+        runTime[i] = js.getJSONObject("RunTime").getLong("msec");
+      }
+    }
+  }
+
+  int size() {
+    return runTime.length;
+  }
+
+  /**
+   * @return start time of the child at the given position as found in the provider file or <code>null</code> if not available
+   */
+  String getStartTime(int index) {
+    return startTime[index];
+  }
+
+  long getStartTimeInMilliSec(int index) {
+    return startTimeInMilliSec[index];
+  }
+
+  /**
+   * @return end time of the child at the given position as found in the provider file or <code>null</code> if not available
+   */
+  String getEndTime(int index) {
+    return endTime[index];
+  }
+
+  long getEndTimeInMilliSec(int index) {
+    return endTimeInMilliSec[index];
+  }
+
+  /**
+   * @return run time in milliseconds of the child at the given position or -1 if not available
+   */
+  long getRunTime(int index) {
+    return runTime[index];
+  }
+}
@@ -0,0 +1,243 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.mht;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stateful base64 decoder. Input may be fed in arbitrary chunks (e.g. line by line): incomplete quanta are carried over to the next call and decoded
+ * bytes are written straight into the destination array. Line breaks and other whitespace in the input are ignored.
+ */
+final class Base64Decoder {
+
+  private static final byte DECODE_TABLE[] = new byte[128];
+
+  static {
+    for (int i = 0; i < DECODE_TABLE.length; i++) {
+      DECODE_TABLE[i] = -1;
+    }
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    for (int i = 0; i < alphabet.length(); i++) {
+      DECODE_TABLE[alphabet.charAt(i)] = (byte) i;
+    }
+  }
+
+  private int quantum;
+  private int quantumLen;
+  private int padding;
+
+  private final byte pending[] = new byte[3];
+  private int pendingPos;
+  private int pendingLen;
+
+  /**
+   * Discards any carried over state so a new base64 stream can be decoded.
+   */
+  void reset() {
+    quantum = 0;
+    quantumLen = 0;
+    padding = 0;
+    pendingPos = 0;
+    pendingLen = 0;
+  }
+
+  /**
+   * @return number of decoded bytes buffered internally that have not been returned yet
+   */
+  int pending() {
+    return pendingLen - pendingPos;
+  }
+
+  /**
+   * @return <code>true</code> if no input has been carried over, i.e. decoding stopped right after a complete quantum
+   */
+  boolean isAtQuantumBoundary() {
+    return quantumLen == 0;
+  }
+
+  /**
+   * Returns the number of bytes the given input decodes to, assuming it is made of complete quanta of base64 alphabet characters and padding. The
+   * input is not validated.
+   *
+   * @param src base64 encoded input (between its position and limit)
+   * @return the number of decoded bytes or -1 if the input does not consist of complete quanta
+   */
+  static int decodedLength(ByteBuffer src) {
+    int len = src.remaining();
+    if (len % 4 != 0) {
+      return -1;
+    }
+    int padding = 0;
+    for (int i = src.limit() - 1; i >= src.limit() - 2 && i >= src.position() && src.get(i) == '='; i--) {
+      padding++;
+    }
+    return len / 4 * 3 - padding;
+  }
+
+  /**
+   * Decodes data from <code>src</code> (between its position and limit) into <code>dst</code>. Decoding stops when <code>len</code> bytes have been
+   * written or when <code>src</code> has no remaining bytes, whatever happens first. The position of <code>src</code> is advanced past the consumed
+   * input.
+   *
+   * @param src base64 encoded input
+   * @param dst the buffer into which the data is decoded
+   * @param off the start offset in the destination array
+   * @param len the maximum number of bytes decoded
+   * @return the number of bytes written into <code>dst</code>
+   * @throws MHTException if the input is not valid base64 data
+   */
+  int decode(ByteBuffer src, byte[] dst, int off, int len) throws MHTException {
+    int n = 0;
+    while (pendingPos < pendingLen && n < len) {
+      dst[off + n++] = pending[pendingPos++];
+    }
+    if (pendingPos == pendingLen) {
+      pendingPos = 0;
+      pendingLen = 0;
+    }
+
+    while (n < len && src.hasRemaining()) {
+      if (quantumLen == 0) {
+        n = src.hasArray() ? decodeQuanta(src, dst, off, n, len) : decodeQuantaDirect(src, dst, off, n, len);
+        if (n == len || !src.hasRemaining()) {
+          break;
+        }
+      }
+
+      int c = src.get() & 0xff;
+      int v = c < DECODE_TABLE.length ? DECODE_TABLE[c] : -1;
+      if (v < 0) {
+        if (c == '=') {
+          if (quantumLen < 2) {
+            throw new MHTException("Invalid base64 data. Unexpected padding character.");
+          }
+          padding++;
+          v = 0;
+        } else if (c == '\r' || c == '\n' || c == ' ' || c == '\t') {
+          continue;
+        } else {
+          throw new MHTException("Invalid base64 data. Unexpected character 0x" + Integer.toHexString(c) + ".");
+        }
+      } else if (padding > 0) {
+        throw new MHTException("Invalid base64 data. Data found after padding character.");
+      }
+
+      quantum = (quantum << 6) | v;
+      if (++quantumLen == 4) {
+        int count = 3 - padding;
+        for (int i = 0; i < count; i++) {
+          byte value = (byte) (quantum >> (16 - 8 * i));
+          if (n < len) {
+            dst[off + n++] = value;
+          } else {
+            pending[pendingLen++] = value;
+          }
+        }
+        quantum = 0;
+        quantumLen = 0;
+        padding = 0;
+      }
+    }
+
+    return n;
+  }
+
+  /**
+   * Fast path decoding complete quanta directly from the array backing <code>src</code>. Stops at the first quantum that contains anything else than
+   * base64 alphabet characters (padding, whitespace or invalid data), which is then handled byte by byte.
+   *
+   * @return new number of bytes written into <code>dst</code>
+   */
+  private static int decodeQuanta(ByteBuffer src, byte[] dst, int off, int n, int len) {
+    byte a[] = src.array();
+    int p = src.arrayOffset() + src.position();
+    int end = src.arrayOffset() + src.limit();
+    while (end - p >= 4 && len - n >= 3) {
+      int q = quantum(a[p], a[p + 1], a[p + 2], a[p + 3]);
+      if (q < 0) {
+        break;
+      }
+      dst[off + n] = (byte) (q >> 16);
+      dst[off + n + 1] = (byte) (q >> 8);
+      dst[off + n + 2] = (byte) q;
+      n += 3;
+      p += 4;
+    }
+    src.position(p - src.arrayOffset());
+    return n;
+  }
+
+  /**
+   * Same as {@link #decodeQuanta(ByteBuffer, byte[], int, int, int)} for buffers without backing array (e.g. memory mapped files), reading the input
+   * with absolute gets so it is never copied into the heap.
+   *
+   * @return new number of bytes written into <code>dst</code>
+   */
+  private static int decodeQuantaDirect(ByteBuffer src, byte[] dst, int off, int n, int len) {
+    int p = src.position();
+    int end = src.limit();
+    while (end - p >= 4 && len - n >= 3) {
+      int q = quantum(src.get(p), src.get(p + 1), src.get(p + 2), src.get(p + 3));
+      if (q < 0) {
+        break;
+      }
+      dst[off + n] = (byte) (q >> 16);
+      dst[off + n + 1] = (byte) (q >> 8);
+      dst[off + n + 2] = (byte) q;
+      n += 3;
+      p += 4;
+    }
+    src.position(p);
+    return n;
+  }
+
+  /**
+   * Decodes a complete quantum made of base64 alphabet characters only.
+   *
+   * @return the 24 bits of the quantum or a negative value if any character is not part of the base64 alphabet
+   */
+  private static int quantum(int c0, int c1, int c2, int c3) {
+    if ((c0 | c1 | c2 | c3) < 0) {
+      return -1;
+    }
+    int v0 = DECODE_TABLE[c0];
+    int v1 = DECODE_TABLE[c1];
+    int v2 = DECODE_TABLE[c2];
+    int v3 = DECODE_TABLE[c3];
+    if ((v0 | v1 | v2 | v3) < 0) {
+      return -1;
+    }
+    return (v0 << 18) | (v1 << 12) | (v2 << 6) | v3;
+  }
+
+  /**
+   * Signals that no more input follows for the current base64 stream.
+   *
+   * @throws MHTException if the input ended in the middle of a quantum
+   */
+  void finish() throws MHTException {
+    if (quantumLen != 0) {
+      throw new MHTException("Invalid base64 data. Input ends with an incomplete quantum.");
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.mht;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Precomputed <a href="https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore%E2%80%93Horspool_algorithm">Boyer-Moore-Horspool</a> matcher for the
+ * boundary line of an MHT file. Base64 data never contains the hyphens a boundary starts with, so most positions are skipped by the full length of
+ * the pattern.
+ */
+final class BoundaryMatcher {
+
+  private final byte pattern[];
+  private final int shift[] = new int[256];
+
+  BoundaryMatcher(byte[] pattern) {
+    this.pattern = pattern.clone();
+    int last = pattern.length - 1;
+    for (int i = 0; i < shift.length; i++) {
+      shift[i] = pattern.length;
+    }
+    for (int i = 0; i < last; i++) {
+      shift[pattern[i] & 0xff] = last - i;
+    }
+  }
+
+  int length() {
+    return pattern.length;
+  }
+
+  /**
+   * Returns the number of positions the search window can be moved given the byte found under the last position of the window.
+   *
+   * @param lastByte byte found at the last position of the current window
+   * @return number of positions to move the window
+   */
+  int shift(byte lastByte) {
+    return shift[lastByte & 0xff];
+  }
+
+  /**
+   * Checks whether the pattern is found in the buffer at the given position.
+   *
+   * @param buf buffer to check
+   * @param pos position of the first byte to compare
+   * @return <code>true</code> if the pattern is found at the given position
+   */
+  boolean matchesAt(ByteBuffer buf, int pos) {
+    for (int i = pattern.length - 1; i >= 0; i--) {
+      if (buf.get(pos + i) != pattern[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
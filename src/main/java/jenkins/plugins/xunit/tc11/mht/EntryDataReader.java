@@ -0,0 +1,207 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.mht;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the base64 encoded data of a single MHT entry line by line from a {@link MHTScanner} until the empty line that terminates the entry is found.
+ * Data is decoded straight into the caller's buffer.
+ */
+final class EntryDataReader {
+
+  private final MHTScanner scanner;
+  private final Base64Decoder decoder = new Base64Decoder();
+  private MHTEntry entry;
+  private ByteBuffer curLine;
+  private boolean endOfEntryReached;
+
+  private byte skipBuffer[];
+  private final MHTLimits limits;
+  private final AtomicLong totalSize;
+  private long entrySize;
+
+  /**
+   * Creates a reader of entry data.
+   *
+   * @param scanner scanner providing the entry data
+   * @param limits limits of the decoded data
+   * @param totalSize counter of the decoded bytes, shared by all readers of the same MHT file
+   */
+  EntryDataReader(MHTScanner scanner, MHTLimits limits, AtomicLong totalSize) {
+    this.scanner = scanner;
+    this.limits = limits;
+    this.totalSize = totalSize;
+  }
+
+  /**
+   * Prepares reading the data of the given entry. The scanner must be positioned at the start of the entry data.
+   *
+   * @param entry the entry whose data follows or <code>null</code> if no entry is available
+   */
+  void start(MHTEntry entry) {
+    this.entry = entry;
+    curLine = null;
+    endOfEntryReached = false;
+    entrySize = 0;
+    decoder.reset();
+  }
+
+  MHTEntry getEntry() {
+    return entry;
+  }
+
+  boolean isEndOfEntry() {
+    return endOfEntryReached && decoder.pending() == 0;
+  }
+
+  /**
+   * Returns an estimate of the number of decoded bytes that can be read without reading more lines: bytes decoded but not returned yet and the
+   * complete quanta left in the current line. If the end of entry data has not been reached the estimate is at least 1.
+   *
+   * @return estimated number of bytes available, 0 if end of entry data has been reached
+   */
+  int available() {
+    if (isEndOfEntry()) {
+      return 0;
+    }
+    int n = decoder.pending();
+    if (curLine != null && decoder.isAtQuantumBoundary()) {
+      n += curLine.remaining() / 4 * 3;
+    }
+    return Math.max(1, n);
+  }
+
+  /**
+   * Skips decoded entry data. Lines made of complete quanta that are skipped as a whole are not decoded (nor validated), only their decoded length is
+   * computed.
+   *
+   * @param n the number of bytes to skip
+   * @return the number of bytes skipped, less than <code>n</code> only if end of entry data has been reached
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if the entry data is corrupt
+   */
+  long skip(long n) throws IOException {
+    long skipped = 0;
+
+    while (skipped < n) {
+      if (decoder.pending() == 0 && decoder.isAtQuantumBoundary() && !endOfEntryReached
+          && (curLine == null || !curLine.hasRemaining())) {
+        // At the start of a line. Skip it without decoding if it is
+        // skipped completely
+        if (!scanner.nextLine() || scanner.lineLength() == 0) {
+          endOfEntryReached = true;
+          curLine = null;
+          break;
+        }
+        curLine = scanner.line();
+        int lineLen = Base64Decoder.decodedLength(curLine);
+        if (lineLen >= 0 && lineLen <= n - skipped) {
+          curLine.position(curLine.limit());
+          count(lineLen);
+          skipped += lineLen;
+          continue;
+        }
+      }
+
+      if (skipBuffer == null) {
+        skipBuffer = new byte[1024];
+      }
+      int readLen = read(skipBuffer, 0, (int) Math.min(skipBuffer.length, n - skipped));
+      if (readLen == 0) {
+        break;
+      }
+      skipped += readLen;
+    }
+
+    return skipped;
+  }
+
+  /**
+   * Reads decoded entry data into an array of bytes.
+   *
+   * @param b the buffer into which the data is read
+   * @param off the start offset in the destination array b
+   * @param len the maximum number of bytes read
+   * @return the number of bytes read, 0 if end of entry data has been reached
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if the entry data is corrupt
+   * @throws MHTLimitException if a limit is exceeded
+   */
+  int read(byte[] b, int off, int len) throws IOException {
+    int readLen = 0;
+
+    try {
+      while (readLen < len) {
+        if (curLine != null) {
+          // Decode straight into the caller's buffer. Partial quanta are
+          // carried over to the next line
+          readLen += decoder.decode(curLine, b, off + readLen, len - readLen);
+          if (readLen == len) {
+            break;
+          }
+        }
+
+        if (endOfEntryReached) {
+          // We can not read more lines since end of entry (empty
+          // line) was reached.
+          break;
+        }
+
+        if (!scanner.nextLine() || scanner.lineLength() == 0) {
+          endOfEntryReached = true;
+          curLine = null;
+          decoder.finish();
+        } else {
+          // Line contains data
+          curLine = scanner.line();
+        }
+      }
+    } catch (MHTLimitException e) {
+      throw e;
+    } catch (MHTException e) {
+      throw new MHTException("Corrupt base64 data in entry '" + entry.getName() + "'", e);
+    }
+
+    count(readLen);
+    return readLen;
+  }
+
+  /**
+   * Accounts decoded bytes against the size limits.
+   *
+   * @param n number of bytes decoded
+   * @throws MHTLimitException if a size limit is exceeded
+   */
+  private void count(int n) throws MHTLimitException {
+    entrySize += n;
+    if (entrySize > limits.getMaxEntrySize()) {
+      throw new MHTLimitException(MHTLimits.MAX_ENTRY_SIZE, limits.getMaxEntrySize(), "Entry '" + entry.getName() + "' too big");
+    }
+    if (totalSize.addAndGet(n) > limits.getMaxTotalSize()) {
+      throw new MHTLimitException(MHTLimits.MAX_TOTAL_SIZE, limits.getMaxTotalSize(), "Too much data decoded at entry '" + entry.getName() + "'");
+    }
+  }
+}
@@ -0,0 +1,426 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.mht;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Random access reader of <a href="http://en.wikipedia.org/wiki/MHTML">MHT</a> files produced by <a
+ * href="http://en.wikipedia.org/wiki/TestComplete">TestComplete</a>, inspired by {@link java.util.zip.ZipFile}. The file is scanned once when the
+ * archive is opened, recording name, content type, encoding and position of every entry. Entry data is then decoded on demand, in any order and
+ * without extracting anything to disk.
+ */
+public class MHTArchive implements Closeable {
+
+  private final FileChannel channel;
+  private final boolean memoryMapped;
+  private final MHTLimits limits;
+  private final AtomicLong totalSize = new AtomicLong();
+
+  private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+  private final String baseUrl;
+  private final List<MHTEntry> entries = new ArrayList<>();
+  private final Map<String, MHTEntry> entriesByName = new HashMap<>();
+
+  /**
+   * Opens the given MHT file and builds the index of its entries.
+   *
+   * @param file the MHT file to read
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if a MHT error has occurred
+   */
+  public MHTArchive(File file) throws IOException {
+    this(file, false);
+  }
+
+  /**
+   * Opens the given MHT file and builds the index of its entries. If <code>memoryMapped</code> is set, the file is scanned and decoded on windows
+   * mapped into memory instead of being read into heap buffers. This avoids copying data and is recommended for big (multi-gigabyte) logs. Mapped
+   * windows can't be released explicitly, {@link #close()} only closes the channel: they are unmapped when garbage collected and until then the file
+   * stays locked on Windows (it can't be deleted or overwritten).
+   *
+   * @param file the MHT file to read
+   * @param memoryMapped whether to map the file into memory
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if a MHT error has occurred
+   */
+  public MHTArchive(File file, boolean memoryMapped) throws IOException {
+    this(file, memoryMapped, MHTLimits.DEFAULT);
+  }
+
+  /**
+   * Opens the given MHT file and builds the index of its entries applying the given limits. The total size limit applies to all data decoded from
+   * the archive.
+   *
+   * @param file the MHT file to read
+   * @param memoryMapped whether to map the file into memory
+   * @param limits limits to apply while reading
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if a MHT error has occurred
+   * @throws MHTLimitException if a limit is exceeded while building the index
+   */
+  public MHTArchive(File file, boolean memoryMapped, MHTLimits limits) throws IOException {
+    this.memoryMapped = memoryMapped;
+    this.limits = limits;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      try (MHTInputStream mis = new MHTInputStream(createScanner(0, size), limits, totalSize)) {
+        baseUrl = mis.getBaseUrl();
+
+        MHTEntry previous = null;
+        MHTEntry entry;
+        while ((entry = mis.readNextEntryHeader()) != null) {
+          if (previous != null) {
+            previous.setLength(mis.lastBoundaryPosition - previous.getOffset());
+          }
+          entries.add(entry);
+          if (!entriesByName.containsKey(entry.getName())) {
+            entriesByName.put(entry.getName(), entry);
+          }
+          previous = entry;
+        }
+        if (previous != null) {
+          previous.setLength(size - previous.getOffset());
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the URL all MHT entries are referenced to.
+   *
+   * @return the URL all MHT entries are referenced to
+   */
+  public String getBaseUrl() {
+    return baseUrl;
+  }
+
+  /**
+   * Returns all entries of the archive in the order they appear in the MHT file.
+   *
+   * @return unmodifiable list of entries
+   */
+  public List<MHTEntry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Returns the entry with the given name. If several entries share the same name the first one is returned.
+   *
+   * @param name the name of the entry
+   * @return the entry or <code>null</code> if no entry is found with the name provided
+   */
+  public MHTEntry getEntry(String name) {
+    return entriesByName.get(name);
+  }
+
+  /**
+   * Finds the entries among the given ones whose encoded data is identical to the data of an earlier one. Entries with identical data (e.g. icons
+   * or screenshots repeated in a log) decode to the same bytes, so they only need to be decoded once.<br>
+   * <br>
+   * Only the given entries are read: only entries whose encoded data has the same length are fingerprinted (with a CRC-32 over the encoded data),
+   * and entries with the same fingerprint are compared byte by byte.
+   *
+   * @param entries entries of this archive
+   * @return map of every given entry with an identical earlier entry in <code>entries</code> to the first of them
+   * @throws IOException if an I/O error has occurred
+   */
+  public Map<MHTEntry, MHTEntry> findIdenticalEntries(List<MHTEntry> entries) throws IOException {
+    Map<MHTEntry, MHTEntry> identicalEntries = new IdentityHashMap<>();
+
+    // Only entries with the same length can be identical
+    Map<Long, List<MHTEntry>> entriesByLength = new HashMap<>();
+    for (MHTEntry entry : entries) {
+      entriesByLength.computeIfAbsent(entry.getLength(), k -> new ArrayList<>()).add(entry);
+    }
+
+    for (List<MHTEntry> sameLength : entriesByLength.values()) {
+      if (sameLength.size() < 2) {
+        continue;
+      }
+      Map<Long, List<MHTEntry>> canonicalByChecksum = new HashMap<>();
+      for (MHTEntry entry : sameLength) {
+        List<MHTEntry> candidates = canonicalByChecksum.computeIfAbsent(checksum(entry), k -> new ArrayList<>());
+        MHTEntry canonical = null;
+        for (MHTEntry candidate : candidates) {
+          if (candidate.getEncoding().equalsIgnoreCase(entry.getEncoding()) && sameData(candidate, entry)) {
+            canonical = candidate;
+            break;
+          }
+        }
+        if (canonical != null) {
+          identicalEntries.put(entry, canonical);
+        } else {
+          candidates.add(entry);
+        }
+      }
+    }
+
+    return identicalEntries;
+  }
+
+  private long checksum(MHTEntry entry) throws IOException {
+    CRC32 crc = new CRC32();
+    ByteBuffer buf = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+    for (long done = 0; done < entry.getLength();) {
+      int n = (int) Math.min(buf.capacity(), entry.getLength() - done);
+      readFully(buf, entry.getOffset() + done, n);
+      crc.update(buf.array(), 0, n);
+      done += n;
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Compares the encoded data of two entries of the same length.
+   */
+  private boolean sameData(MHTEntry entry1, MHTEntry entry2) throws IOException {
+    ByteBuffer buf1 = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+    ByteBuffer buf2 = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+    for (long done = 0; done < entry1.getLength();) {
+      int n = (int) Math.min(buf1.capacity(), entry1.getLength() - done);
+      readFully(buf1, entry1.getOffset() + done, n);
+      readFully(buf2, entry2.getOffset() + done, n);
+      if (!buf1.equals(buf2)) {
+        return false;
+      }
+      done += n;
+    }
+    return true;
+  }
+
+  private void readFully(ByteBuffer buf, long position, int len) throws IOException {
+    buf.clear();
+    buf.limit(len);
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, position + buf.position()) < 0) {
+        throw new EOFException("Unexpected end of MHT file at position " + (position + buf.position()));
+      }
+    }
+    buf.flip();
+  }
+
+  /**
+   * Opens the decoded data of the entry with the given name.
+   *
+   * @param name the name of the entry
+   * @return stream of decoded entry data or <code>null</code> if no entry is found with the name provided
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if the encoding of the entry is not supported
+   */
+  public InputStream openEntry(String name) throws IOException {
+    MHTEntry entry = getEntry(name);
+    return entry != null ? openEntry(entry) : null;
+  }
+
+  /**
+   * Opens the decoded data of the given entry. Several entries may be open and read at the same time.
+   *
+   * @param entry an entry of this archive
+   * @return stream of decoded entry data
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if the encoding of the entry is not supported
+   */
+  public InputStream openEntry(MHTEntry entry) throws IOException {
+    MHTInputStream.checkEncoding(entry);
+    MHTScanner scanner = createScanner(entry.getOffset(), entry.getOffset() + entry.getLength());
+    scanner.maxLineLength = limits.getMaxLineLength();
+    return new EntryInputStream(entry, new EntryDataReader(scanner, limits, totalSize));
+  }
+
+  /**
+   * Decodes the data of the given entries and passes it to <code>processor</code>. Entries are independent of each other, so up to
+   * <code>parallelism</code> entries are decoded at the same time on a dedicated {@link ForkJoinPool}. The encoding of all entries is checked before
+   * anything is decoded.<br>
+   * <br>
+   * Results are returned in the order of <code>entries</code>. If processing fails for several entries, the exception of the first one in that order
+   * is thrown, after all running tasks have finished.
+   *
+   * @param <T> type of the processing result
+   * @param entries entries of this archive to decode
+   * @param processor processor called with the decoded data of every entry, possibly from different threads at the same time
+   * @param parallelism maximum number of entries decoded at the same time. With 1 entries are processed in the calling thread.
+   * @return the processing results in the order of <code>entries</code>
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if the encoding of an entry is not supported or its data is corrupt
+   */
+  public <T> List<T> processEntries(List<MHTEntry> entries, final EntryProcessor<T> processor, int parallelism) throws IOException {
+    for (MHTEntry entry : entries) {
+      MHTInputStream.checkEncoding(entry);
+    }
+
+    List<T> results = new ArrayList<>(entries.size());
+    if (parallelism <= 1 || entries.size() <= 1) {
+      for (MHTEntry entry : entries) {
+        results.add(processEntry(entry, processor));
+      }
+      return results;
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, entries.size()));
+    try {
+      List<EntryTask<T>> tasks = new ArrayList<>(entries.size());
+      for (MHTEntry entry : entries) {
+        tasks.add(new EntryTask<>(entry, processor));
+      }
+      for (EntryTask<T> task : tasks) {
+        pool.execute(task);
+      }
+      for (EntryTask<T> task : tasks) {
+        task.join();
+        if (task.failure != null) {
+          throw task.failure;
+        }
+        results.add(task.result);
+      }
+      return results;
+    } finally {
+      // Do not leave tasks behind that still access the archive or the
+      // processor's resources
+      pool.shutdownNow();
+      try {
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private <T> T processEntry(MHTEntry entry, EntryProcessor<T> processor) throws IOException {
+    try (InputStream is = openEntry(entry)) {
+      return processor.process(entry, is);
+    }
+  }
+
+  private MHTScanner createScanner(long start, long end) {
+    if (memoryMapped) {
+      int windowSize = (int) Math.max(1, Math.min(MappedMHTScanner.DEFAULT_WINDOW_SIZE, end - start));
+      return new MappedMHTScanner(channel, start, end, windowSize);
+    }
+    int bufferSize = (int) Math.max(1, Math.min(MHTScanner.DEFAULT_BUFFER_SIZE, end - start));
+    return new MHTScanner(new ChannelInputStream(channel, start, end), bufferSize);
+  }
+
+  /**
+   * Closes the archive. Streams opened with {@link #openEntry(MHTEntry)} can not be read any longer.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Processes the decoded data of an entry, see {@link MHTArchive#processEntries(List, EntryProcessor, int)}.
+   *
+   * @param <T> type of the processing result
+   */
+  public interface EntryProcessor<T> {
+
+    /**
+     * Processes the decoded data of an entry.
+     *
+     * @param entry the entry being processed
+     * @param data stream of decoded entry data. It is closed once this method returns.
+     * @return the processing result
+     * @throws IOException if an I/O error has occurred
+     */
+    T process(MHTEntry entry, InputStream data) throws IOException;
+  }
+
+  /**
+   * Task processing a single entry. I/O errors are kept as they are instead of being wrapped by the pool.
+   */
+  private class EntryTask<T> extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final MHTEntry entry;
+    private final EntryProcessor<T> processor;
+    private T result;
+    private IOException failure;
+
+    private EntryTask(MHTEntry entry, EntryProcessor<T> processor) {
+      this.entry = entry;
+      this.processor = processor;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        result = processEntry(entry, processor);
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+  }
+
+  /**
+   * Stream of decoded data of a single entry.
+   */
+  static private class EntryInputStream extends InputStream {
+
+    private final EntryDataReader data;
+
+    private EntryInputStream(MHTEntry entry, EntryDataReader data) {
+      this.data = data;
+      data.start(entry);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte b[] = new byte[1];
+      return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int n = data.read(b, off, len);
+      return n > 0 ? n : -1;
+    }
+  }
+}
@@ -41,12 +41,21 @@ public class MHTEntry {
 
   private String name;
   private String contentType;
+  private String encoding;
+  private long offset = -1;
+  private long length = -1;
 
   protected MHTEntry(String name, String contentType) {
     this.name = name;
     this.contentType = contentType;
   }
 
+  MHTEntry(String name, String contentType, String encoding, long offset) {
+    this(name, contentType);
+    this.encoding = encoding;
+    this.offset = offset;
+  }
+
   /**
    * Returns the name of this entry, considering it the part of the entry location without the base URL indicated in the header of the MHT file.
    *
@@ -64,4 +73,35 @@ public class MHTEntry {
   public String getContentType() {
     return contentType;
   }
+
+  /**
+   * Returns the content transfer encoding of this entry.
+   *
+   * @return the encoding of the entry or <code>null</code> if unknown
+   */
+  public String getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Returns the position of the first byte of the (encoded) entry data within the MHT file.
+   *
+   * @return the offset of the entry data or -1 if unknown
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Returns the number of bytes of the (encoded) entry data within the MHT file, up to the boundary of the next entry.
+   *
+   * @return the length of the encoded entry data or -1 if unknown
+   */
+  public long getLength() {
+    return length;
+  }
+
+  void setLength(long length) {
+    this.length = length;
+  }
 }
@@ -23,18 +23,15 @@
  */
 package jenkins.plugins.xunit.tc11.mht;
 
-import java.io.BufferedReader;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipInputStream;
 
-import javax.xml.bind.DatatypeConverter;
-
 /**
  * Utility class to read <a href="http://en.wikipedia.org/wiki/MHTML">MHT</a>
  * files produced by <a
@@ -51,25 +48,65 @@ public class MHTInputStream extends FilterInputStream {
   private static final int ENTRY_HDR_FIELD_CONTENT_LOCATION = 2;
   private static final String ENTRY_HDR_FIELDS[] = {"Content-Type: ",
     "Content-Transfer-Encoding: ", "Content-Location: "};
+  private static final byte ENTRY_HDR_FIELD_BYTES[][] = new byte[ENTRY_HDR_FIELDS.length][];
+
+  static {
+    for (int i = 0; i < ENTRY_HDR_FIELDS.length; i++) {
+      ENTRY_HDR_FIELD_BYTES[i] = ENTRY_HDR_FIELDS[i].getBytes(StandardCharsets.US_ASCII);
+    }
+  }
 
-  BufferedReader br;
+  MHTScanner scanner;
   MHTHeader hdr;
   MHTEntry curEntry;
-  boolean endOfEntryReached;
+  EntryDataReader data;
+  long lastBoundaryPosition = -1;
+  private boolean atBoundary;
+  final MHTLimits limits;
+  private int entryCount;
 
-  byte curDataBuffer[];
-  int curDataPos;
+  /**
+   * Creates a new MHT input stream and reads the header of the MHT so {@link #getBaseUrl()} can be called immediately. {@link MHTLimits#DEFAULT}
+   * limits apply.
+   *
+   * @param in the actual input stream
+   * @throws MHTException if a MHT error has occurred
+   */
+  public MHTInputStream(InputStream in) throws MHTException {
+    this(in, MHTLimits.DEFAULT);
+  }
 
   /**
    * Creates a new MHT input stream and reads the header of the MHT so {@link #getBaseUrl()} can be called immediately.
    *
    * @param in the actual input stream
+   * @param limits limits to apply while reading
    * @throws MHTException if a MHT error has occurred
+   * @throws MHTLimitException if a limit is exceeded while reading the header
    */
-  public MHTInputStream(InputStream in) throws MHTException {
+  public MHTInputStream(InputStream in, MHTLimits limits) throws MHTException {
+    this(in, new MHTScanner(in), limits, new AtomicLong());
+  }
+
+  /**
+   * Creates a new MHT input stream reading from the given scanner.
+   *
+   * @param scanner the scanner providing the MHT data
+   * @param limits limits to apply while reading
+   * @param totalSize counter of decoded bytes to account the data read from this stream
+   * @throws MHTException if a MHT error has occurred
+   */
+  MHTInputStream(MHTScanner scanner, MHTLimits limits, AtomicLong totalSize) throws MHTException {
+    this(null, scanner, limits, totalSize);
+  }
+
+  private MHTInputStream(InputStream in, MHTScanner scanner, MHTLimits limits, AtomicLong totalSize) throws MHTException {
     super(in);
-    br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
-    hdr = new MHTHeader(br);
+    this.scanner = scanner;
+    this.limits = limits;
+    scanner.maxLineLength = limits.getMaxLineLength();
+    hdr = new MHTHeader(scanner, limits);
+    data = new EntryDataReader(scanner, limits, totalSize);
   }
 
   /**
@@ -99,84 +136,129 @@ public class MHTInputStream extends FilterInputStream {
    * @throws MHTException if a MHT error has occurred
    */
   public MHTEntry getNextEntry(String name) throws IOException {
+    MHTEntry entry;
+
+    curEntry = null;
+    data.start(null);
+
+    while ((entry = readNextEntryHeader()) != null) {
+      if (name == null || name.equals(entry.getName())) {
+        // Entry found. InputStream is now positioned at start
+        // of Base64 entry data
+        checkEncoding(entry);
+        curEntry = entry;
+        data.start(entry);
+        break;
+      }
+      // Entry does not match. Skip its data by looking for next boundary
+    }
 
-    String line = null;
-    boolean boundaryFound = false;
-    int entryHdrIdx = 0;
+    // Return entry found (null if none)
+    return curEntry;
+  }
+
+  /**
+   * Looks for the next boundary and parses the header of the entry that follows. Data of entries in between is skipped without decoding. When an entry
+   * is returned the stream is positioned at the start of its data, {@link MHTEntry#getOffset()} being that position.
+   *
+   * @return the entry or <code>null</code> if EOF was reached
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if the entry header is malformed
+   * @throws MHTLimitException if a limit is exceeded
+   */
+  MHTEntry readNextEntryHeader() throws IOException {
     String entryHdrValues[] = new String[ENTRY_HDR_FIELDS.length];
 
-    curEntry = null;
-    endOfEntryReached = false;
+    if (!skipToBoundary()) {
+      return null;
+    }
+    atBoundary = false;
+    if (++entryCount > limits.getMaxEntryCount()) {
+      throw new MHTLimitException(MHTLimits.MAX_ENTRY_COUNT, limits.getMaxEntryCount(), "Too many entries");
+    }
 
-    while ((line = br.readLine()) != null) {
-      if (!boundaryFound) {
-        /* Look for next boundary first */
-        if (line.equals(hdr.boundary)) {
-          boundaryFound = true;
-        }
+    /* Boundary found. Process entry header fields */
+    for (int entryHdrIdx = 0; entryHdrIdx < ENTRY_HDR_FIELDS.length; entryHdrIdx++) {
+      if (!scanner.nextLine()) {
+        // EOF found within entry header. No more entries
+        return null;
+      }
+      if (scanner.lineStartsWith(ENTRY_HDR_FIELD_BYTES[entryHdrIdx])) {
+        entryHdrValues[entryHdrIdx] = scanner
+            .lineToString(ENTRY_HDR_FIELD_BYTES[entryHdrIdx].length);
       } else {
-        /* Boundary found. Process entry header fields */
-        if (line.startsWith(ENTRY_HDR_FIELDS[entryHdrIdx])) {
-          entryHdrValues[entryHdrIdx] = line
-              .substring(ENTRY_HDR_FIELDS[entryHdrIdx].length());
-        } else {
-          throw new MHTException("Entry header '"
-              + ENTRY_HDR_FIELDS[entryHdrIdx]
-              + "' not found at line " + entryHdrIdx
-              + " of MHT entry header. Found: '" + line + "'");
-        }
-
-        entryHdrIdx++;
-
-        if (entryHdrIdx == ENTRY_HDR_FIELDS.length) {
-          // Expect empty line after header fields
-          line = br.readLine();
-          if (line == null) {
-            throw new MHTException(
-                "EOF found while processing entry header");
-          } else if (line.length() != 0) {
-            throw new MHTException(
-                "Malformed entry header. It should finish with an empty line. Found: '"
-                + line + "'");
-          }
-
-          String contentLocation = entryHdrValues[ENTRY_HDR_FIELD_CONTENT_LOCATION];
-          if (!contentLocation.startsWith(hdr.url)) {
-            throw new MHTException(
-                "Invalid entry header. Content location is not relative to base URL ("
-                + hdr.url + "): " + contentLocation);
-          }
-
-          String entryName = contentLocation.substring(hdr.url.length());
-          if (name == null || name.equals(entryName)) {
-            // Entry found. InputStream is now positioned at start
-            // of Base64 entry data
-            String encoding = entryHdrValues[ENTRY_HDR_FIELD_CONTENT_TRANSFER_ENCODING];
-            String contentType = entryHdrValues[ENTRY_HDR_FIELD_CONTENT_TYPE];
-
-            if (!"base64".equalsIgnoreCase(encoding)) {
-              throw new MHTException(
-                  "Unsupported encoding for entry '"
-                  + entryName
-                  + "' found (only 'base64' is supported): "
-                  + encoding);
-            }
-
-            // Entry found
-            curEntry = new MHTEntry(entryName, contentType);
-            break;
-          } else {
-            // Entry does not match. Reset search by looking for
-            // next boundary
-            entryHdrIdx = 0;
-            boundaryFound = false;
-          }
-        }
+        throw new MHTException("Entry header '"
+            + ENTRY_HDR_FIELDS[entryHdrIdx]
+            + "' not found at line " + entryHdrIdx
+            + " of MHT entry header. Found: '" + scanner.lineToString(0) + "'");
       }
     }
 
-    // Return entry found (null if none)
-    return curEntry;
+    // Expect empty line after header fields
+    if (!scanner.nextLine()) {
+      throw new MHTException(
+          "EOF found while processing entry header");
+    } else if (scanner.lineLength() != 0) {
+      throw new MHTException(
+          "Malformed entry header. It should finish with an empty line. Found: '"
+          + scanner.lineToString(0) + "'");
+    }
+
+    String contentLocation = entryHdrValues[ENTRY_HDR_FIELD_CONTENT_LOCATION];
+    if (!contentLocation.startsWith(hdr.url)) {
+      throw new MHTException(
+          "Invalid entry header. Content location is not relative to base URL ("
+          + hdr.url + "): " + contentLocation);
+    }
+
+    return new MHTEntry(contentLocation.substring(hdr.url.length()),
+        entryHdrValues[ENTRY_HDR_FIELD_CONTENT_TYPE],
+        entryHdrValues[ENTRY_HDR_FIELD_CONTENT_TRANSFER_ENCODING],
+        scanner.position());
+  }
+
+  /**
+   * Moves the stream to the next boundary line unless it is already positioned there.
+   *
+   * @return <code>true</code> if the stream is positioned at a boundary, <code>false</code> if EOF was reached
+   * @throws IOException if an I/O error has occurred
+   */
+  private boolean skipToBoundary() throws IOException {
+    if (!atBoundary && scanner.skipToLine(hdr.boundaryLineMatcher)) {
+      atBoundary = true;
+      lastBoundaryPosition = scanner.linePosition();
+    }
+    return atBoundary;
+  }
+
+  /**
+   * Closes the current MHT entry and positions the stream right before the next entry. Remaining data of the current entry is skipped without
+   * decoding it.
+   *
+   * @throws IOException if an I/O error has occurred
+   */
+  public void closeEntry() throws IOException {
+    if (curEntry != null) {
+      skipToBoundary();
+      curEntry = null;
+      data.start(null);
+    }
+  }
+
+  /**
+   * Checks that the data of the given entry can be decoded.
+   *
+   * @param entry the entry to check
+   * @throws MHTException if the encoding of the entry is not supported
+   */
+  static void checkEncoding(MHTEntry entry) throws MHTException {
+    if (!"base64".equalsIgnoreCase(entry.getEncoding())) {
+      throw new MHTException(
+          "Unsupported encoding for entry '"
+          + entry.getName()
+          + "' found (only 'base64' is supported): "
+          + entry.getEncoding());
+    }
   }
 
   /**
@@ -192,27 +274,35 @@ public class MHTInputStream extends FilterInputStream {
   }
 
   /**
-   * Returns 0 after EOF has reached for the current entry data, otherwise always return 1. <br>
-   * <br>
-   * Programs should not count on this method to return the actual number of bytes that could be read without blocking.
+   * Returns an estimate of the number of bytes that can be read from the current entry without reading more data from the underlying stream: bytes
+   * already decoded and the bytes the rest of the current line decodes to. Returns 0 only after EOF has been reached for the current entry data, so
+   * programs may read while this method returns a value greater than 0.
    *
-   * @return 1 before EOF and 0 after EOF has reached for current entry.
+   * @return estimated number of bytes that can be read or 0 after EOF has been reached for the current entry
    *
    * @throws IOException if an I/O error has occurred
    */
   @Override
   public int available() throws IOException {
-    return curEntry != null && !endOfEntryReached ? 1 : 0;
+    return curEntry != null ? data.available() : 0;
   }
 
   /**
-   * This operation is not supported with this input stream and {@link UnsupportedOperationException} will be thrown if this method is called.
+   * Skips over and discards <code>n</code> bytes of data of the current entry. Lines of base64 data that are skipped completely are not decoded.
    *
-   * @throws UnsupportedOperationException if called
+   * @param n the number of bytes to skip
+   * @return the actual number of bytes skipped, less than <code>n</code> only if end of entry data has been reached
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTException if the stream is not positioned at an entry or the entry data is corrupt
    */
   @Override
   public long skip(long n) throws IOException {
-    throw new UnsupportedOperationException("Skip not supported");
+    if (curEntry == null) {
+      throw new MHTException(
+          "Stream not positioned at start of entry data. Call getNexEntry() first");
+    }
+
+    return n > 0 ? data.skip(n) : 0;
   }
 
   @Override
@@ -245,10 +335,20 @@ public class MHTInputStream extends FilterInputStream {
    */
   @Override
   public void close() throws IOException {
-    br.close();
+    scanner.close();
     curEntry = null;
-    curDataBuffer = null;
-    curDataPos = 0;
+    data.start(null);
+  }
+
+  /**
+   * Reads the next byte of data from the current MHT entry.
+   *
+   * @return the next byte of data, or <code>-1</code> if the end of the entry data is reached
+   */
+  @Override
+  public int read() throws IOException {
+    byte b[] = new byte[1];
+    return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
   }
 
   /**
@@ -258,6 +358,7 @@ public class MHTInputStream extends FilterInputStream {
    * @param b the buffer into which the data is read
    * @param off the start offset in the destination array b
    * @param len the maximum number of bytes read
+   * @return the number of bytes read, or <code>-1</code> if the end of the entry data is reached
    */
   @Override
   public int read(byte[] b, int off, int len) throws IOException {
@@ -265,41 +366,12 @@ public class MHTInputStream extends FilterInputStream {
       throw new MHTException(
           "Stream not positioned at start of entry data. Call getNexEntry() first");
     }
-
-    // Ready previously buffered data
-    int pendingLen = len;
-    int curOff = off;
-
-    while (pendingLen > 0) {
-      if (curDataBuffer != null && curDataPos < curDataBuffer.length) {
-        int remBufferLen = curDataBuffer.length - curDataPos;
-        int lenToCopy = pendingLen < remBufferLen ? pendingLen
-            : remBufferLen;
-        System.arraycopy(curDataBuffer, curDataPos, b, curOff,
-            lenToCopy);
-        curOff += lenToCopy;
-        curDataPos += lenToCopy;
-        pendingLen -= lenToCopy;
-      } else {
-        if (endOfEntryReached) {
-          // We can not read more lines since end of entry (empty
-          // line) was reached. getNextEntry() should be called.
-          break;
-        } else {
-          String line = br.readLine();
-          if (line == null || line.length() == 0) {
-            endOfEntryReached = true;
-          } else {
-            // Line contains data
-            curDataBuffer = DatatypeConverter
-                .parseBase64Binary(line);
-            curDataPos = 0;
-          }
-        }
-      }
+    if (len == 0) {
+      return 0;
     }
 
-    return len - pendingLen;
+    int readLen = data.read(b, off, len);
+    return readLen > 0 ? readLen : -1;
   }
 
   /**
@@ -324,18 +396,19 @@ public class MHTInputStream extends FilterInputStream {
 
     static final String FIRST_LINE_PATTERN = "<!-- saved from url=\\(0017\\)([^ ]+) --> *";
     static final String BOUNDARY_PATTERN = "[ \t]*boundary=\"([^\"]+)\";";
-    static final int MAX_HEADER_SIZE = 10;
+    static final String BOUNDARY_LINE_PATTERN = "[ \t]*boundary=.*";
 
     String url;
     String boundary;
+    BoundaryMatcher boundaryLineMatcher;
 
-    private MHTHeader(BufferedReader reader) throws MHTException {
+    private MHTHeader(MHTScanner reader, MHTLimits limits) throws MHTException {
       try {
         Pattern firstLinePattern = Pattern.compile(FIRST_LINE_PATTERN);
         String line = reader.readLine();
 
-        Matcher firstLineMatcher = firstLinePattern.matcher(line);
-        if (!firstLineMatcher.matches()) {
+        Matcher firstLineMatcher = line != null ? firstLinePattern.matcher(line) : null;
+        if (firstLineMatcher == null || !firstLineMatcher.matches()) {
           throw new MHTException(
               "First line does not specify origin URL: " + line);
         }
@@ -344,18 +417,24 @@ public class MHTInputStream extends FilterInputStream {
 
         line = reader.readLine();
         int lineIdx = 1;
-        while (line != null && lineIdx++ < MAX_HEADER_SIZE
-            && !Pattern.matches(BOUNDARY_PATTERN, line)) {
+        while (line != null && lineIdx++ < limits.getMaxHeaderLines()
+            && !Pattern.matches(BOUNDARY_LINE_PATTERN, line)) {
           line = reader.readLine();
         }
 
-        Matcher boundaryMatcher = Pattern.compile(BOUNDARY_PATTERN)
-            .matcher(line);
-        if (!boundaryMatcher.matches()) {
+        if (line == null) {
           throw new MHTException(
               "Boundary marker not found in MHT header after "
               + lineIdx + " lines.");
         }
+        if (!Pattern.matches(BOUNDARY_LINE_PATTERN, line)) {
+          throw new MHTLimitException(MHTLimits.MAX_HEADER_LINES, limits.getMaxHeaderLines(),
+              "Boundary marker not found in MHT header after " + lineIdx + " lines");
+        }
+        Matcher boundaryMatcher = Pattern.compile(BOUNDARY_PATTERN).matcher(line);
+        if (!boundaryMatcher.matches()) {
+          throw new MHTException("Invalid boundary marker in MHT header: " + line);
+        }
 
         /*
 				 * As of RFC1341: The Content-Type field for multipart entities
@@ -366,7 +445,10 @@ public class MHTInputStream extends FilterInputStream {
 				 * parameter value from the Content-Type header field.
          */
         boundary = "--" + boundaryMatcher.group(1);
+        boundaryLineMatcher = new BoundaryMatcher(boundary.getBytes(StandardCharsets.US_ASCII));
 
+      } catch (MHTLimitException e) {
+        throw e;
       } catch (IOException e) {
         throw new MHTException("Error parsing MHT header", e);
       }
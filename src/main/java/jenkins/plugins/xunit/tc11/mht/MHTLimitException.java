@@ -0,0 +1,55 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.mht;
+
+/**
+ * Signals that reading a MHT file has been stopped because one of the {@link MHTLimits} has been exceeded.
+ */
+public class MHTLimitException extends MHTException {
+
+  /**
+   * Serial version of this exception
+   */
+  private static final long serialVersionUID = -2739315521069839470L;
+
+  private final String limit;
+
+  /**
+   * Constructs a {@link MHTLimitException} for the given limit.
+   *
+   * @param limit name of the limit exceeded (one of the constants of {@link MHTLimits})
+   * @param value value of the limit
+   * @param s description of what exceeded the limit
+   */
+  public MHTLimitException(String limit, long value, String s) {
+    super("MHT limit '" + limit + "' of " + value + " exceeded: " + s);
+    this.limit = limit;
+  }
+
+  /**
+   * @return name of the limit exceeded (one of the constants of {@link MHTLimits})
+   */
+  public String getLimit() {
+    return limit;
+  }
+}
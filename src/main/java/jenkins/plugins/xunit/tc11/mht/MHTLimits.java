@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.mht;
+
+/**
+ * Limits applied while reading MHT files, so malformed or hostile files (e.g. truncated files, wrong boundaries or binary data without line breaks)
+ * fail with a {@link MHTLimitException} instead of exhausting memory or disk space.<br>
+ * <br>
+ * Default values may be changed with system properties named after this class and the limit, e.g.
+ * <i>jenkins.plugins.xunit.tc11.mht.MHTLimits.maxLineLength</i>.
+ */
+public final class MHTLimits {
+
+  public static final String MAX_LINE_LENGTH = "maxLineLength";
+  public static final String MAX_HEADER_LINES = "maxHeaderLines";
+  public static final String MAX_ENTRY_SIZE = "maxEntrySize";
+  public static final String MAX_TOTAL_SIZE = "maxTotalSize";
+  public static final String MAX_ENTRY_COUNT = "maxEntryCount";
+
+  /**
+   * Limits used if none are given: lines up to 8 MB, 10 header lines, decoded entries up to half the maximum heap size (log entries are parsed
+   * into memory as a whole), 8 times the maximum heap size decoded in total and 1 million entries.
+   */
+  public static final MHTLimits DEFAULT = new MHTLimits(
+      Integer.getInteger(property(MAX_LINE_LENGTH), 8 * 1024 * 1024),
+      Integer.getInteger(property(MAX_HEADER_LINES), 10),
+      Long.getLong(property(MAX_ENTRY_SIZE), Runtime.getRuntime().maxMemory() / 2),
+      Long.getLong(property(MAX_TOTAL_SIZE), multiplyMaxMemory(8)),
+      Integer.getInteger(property(MAX_ENTRY_COUNT), 1000000));
+
+  private final int maxLineLength;
+  private final int maxHeaderLines;
+  private final long maxEntrySize;
+  private final long maxTotalSize;
+  private final int maxEntryCount;
+
+  private MHTLimits(int maxLineLength, int maxHeaderLines, long maxEntrySize, long maxTotalSize, int maxEntryCount) {
+    this.maxLineLength = maxLineLength;
+    this.maxHeaderLines = maxHeaderLines;
+    this.maxEntrySize = maxEntrySize;
+    this.maxTotalSize = maxTotalSize;
+    this.maxEntryCount = maxEntryCount;
+  }
+
+  private static String property(String limit) {
+    return MHTLimits.class.getName() + "." + limit;
+  }
+
+  private static long multiplyMaxMemory(int factor) {
+    long maxMemory = Runtime.getRuntime().maxMemory();
+    return maxMemory > Long.MAX_VALUE / factor ? Long.MAX_VALUE : maxMemory * factor;
+  }
+
+  /**
+   * @return maximum length in bytes of a single line (without terminator)
+   */
+  public int getMaxLineLength() {
+    return maxLineLength;
+  }
+
+  /**
+   * @return maximum number of lines of the MHT header searched for the boundary
+   */
+  public int getMaxHeaderLines() {
+    return maxHeaderLines;
+  }
+
+  /**
+   * @return maximum number of decoded bytes of a single entry
+   */
+  public long getMaxEntrySize() {
+    return maxEntrySize;
+  }
+
+  /**
+   * @return maximum number of decoded bytes of all entries read from the same stream or archive
+   */
+  public long getMaxTotalSize() {
+    return maxTotalSize;
+  }
+
+  /**
+   * @return maximum number of entries
+   */
+  public int getMaxEntryCount() {
+    return maxEntryCount;
+  }
+
+  public MHTLimits withMaxLineLength(int maxLineLength) {
+    return new MHTLimits(maxLineLength, maxHeaderLines, maxEntrySize, maxTotalSize, maxEntryCount);
+  }
+
+  public MHTLimits withMaxHeaderLines(int maxHeaderLines) {
+    return new MHTLimits(maxLineLength, maxHeaderLines, maxEntrySize, maxTotalSize, maxEntryCount);
+  }
+
+  public MHTLimits withMaxEntrySize(long maxEntrySize) {
+    return new MHTLimits(maxLineLength, maxHeaderLines, maxEntrySize, maxTotalSize, maxEntryCount);
+  }
+
+  public MHTLimits withMaxTotalSize(long maxTotalSize) {
+    return new MHTLimits(maxLineLength, maxHeaderLines, maxEntrySize, maxTotalSize, maxEntryCount);
+  }
+
+  public MHTLimits withMaxEntryCount(int maxEntryCount) {
+    return new MHTLimits(maxLineLength, maxHeaderLines, maxEntrySize, maxTotalSize, maxEntryCount);
+  }
+}
@@ -0,0 +1,290 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.mht;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte oriented line scanner used to read MHT files. MHT files are plain ASCII (headers and base64 encoded data), so lines are located directly on a
+ * reusable byte buffer instead of decoding the whole file into characters. A line is only turned into a {@link String} on request (e.g. for header
+ * fields).<br>
+ * <br>
+ * Lines are terminated by a line feed ('\n'), a carriage return ('\r') or a carriage return followed immediately by a line feed, the same as
+ * {@link java.io.BufferedReader#readLine()}.<br>
+ * <br>
+ * This implementation reads from an {@link InputStream} into a heap buffer. Subclasses may provide the data in other ways by overriding
+ * {@link #refill()}.
+ */
+class MHTScanner implements Closeable {
+
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream in;
+
+  /**
+   * Buffer holding the data being scanned. Valid data goes from index 0 to {@link #limit}.
+   */
+  ByteBuffer buf;
+  /**
+   * Index in {@link #buf} of the next byte to be scanned.
+   */
+  int pos;
+  /**
+   * Index in {@link #buf} after the last valid byte.
+   */
+  int limit;
+  /**
+   * Absolute position in the scanned data of the byte at index 0 of {@link #buf}.
+   */
+  long bufOffset;
+  /**
+   * Whether data after {@link #limit} is available or not.
+   */
+  boolean eof;
+  /**
+   * Maximum length of a line. Longer lines are not buffered completely but make {@link #nextLine()} fail.
+   */
+  int maxLineLength = Integer.MAX_VALUE;
+
+  private int lineStart;
+  private int lineEnd;
+  private ByteBuffer lineView;
+  private ByteBuffer lineViewSource;
+
+  MHTScanner(InputStream in) {
+    this(in, DEFAULT_BUFFER_SIZE);
+  }
+
+  MHTScanner(InputStream in, int bufferSize) {
+    this.in = in;
+    this.buf = ByteBuffer.allocate(bufferSize);
+  }
+
+  /**
+   * Advances to the next line. The bytes of the line (without terminator) are available through {@link #line()} until the next call of this method.
+   *
+   * @return <code>true</code> if a line was read, <code>false</code> at EOF
+   * @throws IOException if an I/O error has occurred
+   * @throws MHTLimitException if the line is longer than {@link #maxLineLength}
+   */
+  boolean nextLine() throws IOException {
+    int i = pos;
+    while (true) {
+      while (i < limit && !isLineTerminator(buf.get(i))) {
+        i++;
+      }
+      if (i - pos > maxLineLength) {
+        throw new MHTLimitException(MHTLimits.MAX_LINE_LENGTH, maxLineLength, "Line too long at position " + position());
+      }
+
+      if (i < limit) {
+        if (buf.get(i) == '\r' && i + 1 == limit && !eof) {
+          // Need one more byte to know whether a '\n' follows
+          i -= fill();
+          continue;
+        }
+        lineStart = pos;
+        lineEnd = i;
+        pos = i + 1;
+        if (buf.get(i) == '\r' && pos < limit && buf.get(pos) == '\n') {
+          pos++;
+        }
+        return true;
+      }
+
+      if (eof) {
+        if (pos == limit) {
+          return false;
+        }
+        // Last line without terminator
+        lineStart = pos;
+        lineEnd = limit;
+        pos = limit;
+        return true;
+      }
+
+      i -= fill();
+    }
+  }
+
+  /**
+   * Skips all data up to the next line that consists exactly of the pattern of the given matcher and makes it the current line. Skipped data is only
+   * searched on the raw buffer, lines are neither located nor converted.
+   *
+   * @param matcher matcher of the line to look for
+   * @return <code>true</code> if such line was found, <code>false</code> if EOF was reached
+   * @throws IOException if an I/O error has occurred
+   */
+  boolean skipToLine(BoundaryMatcher matcher) throws IOException {
+    int len = matcher.length();
+    int i = pos;
+    while (true) {
+      // One byte after the candidate is needed to check for a line terminator
+      while (i + len < limit || (eof && i + len <= limit)) {
+        byte last = buf.get(i + len - 1);
+        if (matcher.matchesAt(buf, i)
+            && (i == pos || isLineTerminator(buf.get(i - 1)))
+            && (i + len == limit || isLineTerminator(buf.get(i + len)))) {
+          pos = i;
+          return nextLine();
+        }
+        i += matcher.shift(last);
+      }
+
+      if (eof) {
+        pos = limit;
+        return false;
+      }
+
+      // Keep the byte before the next candidate to check whether it starts a line
+      if (i - 1 > pos) {
+        pos = i - 1;
+      }
+      i -= fill();
+    }
+  }
+
+  private static boolean isLineTerminator(byte b) {
+    return b == '\n' || b == '\r';
+  }
+
+  /**
+   * Reads the next line and returns it as an UTF-8 decoded string.
+   *
+   * @return the next line or <code>null</code> at EOF
+   * @throws IOException if an I/O error has occurred
+   */
+  String readLine() throws IOException {
+    return nextLine() ? lineToString(0) : null;
+  }
+
+  /**
+   * Returns a view of the current line. The returned buffer is reused (and so overwritten) by later calls.
+   *
+   * @return buffer whose remaining bytes are the bytes of the current line
+   */
+  ByteBuffer line() {
+    if (lineViewSource != buf) {
+      lineView = buf.duplicate();
+      lineViewSource = buf;
+    }
+    lineView.limit(lineEnd);
+    lineView.position(lineStart);
+    return lineView;
+  }
+
+  int lineLength() {
+    return lineEnd - lineStart;
+  }
+
+  /**
+   * @return absolute position of the first byte of the current line
+   */
+  long linePosition() {
+    return bufOffset + lineStart;
+  }
+
+  /**
+   * @return absolute position of the next byte to be scanned
+   */
+  long position() {
+    return bufOffset + pos;
+  }
+
+  boolean lineStartsWith(byte[] b) {
+    if (lineLength() < b.length) {
+      return false;
+    }
+    for (int i = 0; i < b.length; i++) {
+      if (buf.get(lineStart + i) != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the current line as an UTF-8 decoded string skipping the first <code>offset</code> bytes.
+   *
+   * @param offset number of bytes at the start of the line to skip
+   * @return the (partial) line as string
+   */
+  String lineToString(int offset) {
+    ByteBuffer line = line();
+    line.position(lineStart + offset);
+    return StandardCharsets.UTF_8.decode(line).toString();
+  }
+
+  /**
+   * Makes more data available, keeping unscanned data.
+   *
+   * @return number of bytes the unscanned data has been shifted to the left
+   * @throws IOException if an I/O error has occurred
+   */
+  private int fill() throws IOException {
+    int shift = pos;
+    refill();
+    lineStart -= shift;
+    lineEnd -= shift;
+    return shift;
+  }
+
+  /**
+   * Moves unscanned data (from {@link #pos}) to the start of the buffer and appends more data, growing the buffer if a single line does not fit.
+   * Implementations must update {@link #buf}, {@link #pos} (to 0), {@link #limit}, {@link #bufOffset} and {@link #eof} accordingly.
+   *
+   * @throws IOException if an I/O error has occurred
+   */
+  protected void refill() throws IOException {
+    byte a[] = buf.array();
+    if (pos > 0) {
+      System.arraycopy(a, pos, a, 0, limit - pos);
+      limit -= pos;
+      bufOffset += pos;
+      pos = 0;
+    } else if (limit == a.length) {
+      ByteBuffer newBuf = ByteBuffer.allocate(a.length * 2);
+      System.arraycopy(a, 0, newBuf.array(), 0, limit);
+      buf = newBuf;
+      a = newBuf.array();
+    }
+
+    int n = in.read(a, limit, a.length - limit);
+    if (n < 0) {
+      eof = true;
+    } else {
+      limit += n;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (in != null) {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.mht;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link MHTScanner} over a region of a file mapped into memory with {@link FileChannel#map(FileChannel.MapMode, long, long)}. The region is mapped
+ * in windows that slide along while scanning, so files of any size (also beyond 2 GB) can be read. Scanning and decoding run directly on mapped
+ * memory, data is never copied into the Java heap.<br>
+ * <br>
+ * Mapped windows are released by the JVM once they are no longer referenced.
+ */
+class MappedMHTScanner extends MHTScanner {
+
+  static final int DEFAULT_WINDOW_SIZE = 32 * 1024 * 1024;
+
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+  private final FileChannel channel;
+  private final long end;
+  private final int windowSize;
+
+  /**
+   * Creates a scanner over the given region of the channel.
+   *
+   * @param channel channel to map
+   * @param start absolute position of the first byte to scan
+   * @param end absolute position after the last byte to scan
+   * @param windowSize number of bytes mapped at once
+   */
+  MappedMHTScanner(FileChannel channel, long start, long end, int windowSize) {
+    super(null, 0);
+    this.channel = channel;
+    this.end = end;
+    this.windowSize = windowSize;
+    this.buf = EMPTY_BUFFER;
+    this.bufOffset = start;
+    this.eof = start >= end;
+  }
+
+  @Override
+  protected void refill() throws IOException {
+    long start = bufOffset + pos;
+    // Map a bigger window if a single line does not fit into the current one
+    long size = Math.min(end - start, pos == 0 ? Math.max(windowSize, 2L * limit) : windowSize);
+    if (size > Integer.MAX_VALUE) {
+      throw new MHTException("Line too long to be mapped at position " + start);
+    }
+
+    buf = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    bufOffset = start;
+    pos = 0;
+    limit = (int) size;
+    eof = start + size >= end;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The channel is owned by the creator of the scanner
+    buf = EMPTY_BUFFER;
+  }
+}
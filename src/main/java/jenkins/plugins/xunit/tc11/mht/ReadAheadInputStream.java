@@ -0,0 +1,200 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.mht;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream that reads ahead on a background thread. Data is read into a fixed number of direct buffers: while the consumer reads from one buffer
+ * the others are filled, so I/O latency (e.g. of network mounted file systems) overlaps with the processing of the data already read.<br>
+ * <br>
+ * With a depth of 2 buffers this is a classic double buffering. A depth of 1 disables the overlap.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+  /**
+   * Marks the end of data in the queue of filled buffers
+   */
+  private static final ByteBuffer EOF_MARKER = ByteBuffer.allocate(0);
+
+  private final ReadableByteChannel channel;
+  private final BlockingQueue<ByteBuffer> freeBuffers;
+  /**
+   * Filled buffers, {@link #EOF_MARKER} or the {@link IOException} that stopped reading
+   */
+  private final BlockingQueue<Object> filledBuffers;
+  private final Thread reader;
+  private ByteBuffer current;
+  private boolean eof;
+  private volatile boolean closed;
+
+  /**
+   * Creates a read ahead stream over the given stream. The data of {@link FileInputStream}s is read through their channel.
+   *
+   * @param in the stream to read ahead
+   * @param bufferSize size of every buffer
+   * @param depth number of buffers
+   */
+  public ReadAheadInputStream(InputStream in, int bufferSize, int depth) {
+    this(in instanceof FileInputStream ? ((FileInputStream) in).getChannel() : Channels.newChannel(in), bufferSize, depth);
+  }
+
+  /**
+   * Creates a read ahead stream over the given channel.
+   *
+   * @param channel the channel to read ahead
+   * @param bufferSize size of every buffer
+   * @param depth number of buffers
+   */
+  public ReadAheadInputStream(ReadableByteChannel channel, int bufferSize, int depth) {
+    if (bufferSize <= 0 || depth <= 0) {
+      throw new IllegalArgumentException("Buffer size and depth must be greater than 0");
+    }
+    this.channel = channel;
+    freeBuffers = new ArrayBlockingQueue<>(depth);
+    filledBuffers = new ArrayBlockingQueue<>(depth + 1);
+    for (int i = 0; i < depth; i++) {
+      freeBuffers.add(ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    reader = new Thread(this::readAhead, "MHT read-ahead");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Body of the background thread: fills free buffers until EOF, an error or until the stream is closed.
+   */
+  private void readAhead() {
+    try {
+      try {
+        while (!closed) {
+          ByteBuffer buffer = freeBuffers.take();
+          buffer.clear();
+          int n = 0;
+          while (buffer.hasRemaining() && (n = channel.read(buffer)) >= 0) {
+            // Fill the buffer completely
+          }
+          buffer.flip();
+          if (buffer.hasRemaining()) {
+            filledBuffers.put(buffer);
+          }
+          if (n < 0) {
+            filledBuffers.put(EOF_MARKER);
+            return;
+          }
+        }
+      } catch (IOException e) {
+        filledBuffers.put(closed ? EOF_MARKER : e);
+      } catch (RuntimeException e) {
+        filledBuffers.put(new IOException("Error reading ahead", e));
+      }
+    } catch (InterruptedException e) {
+      // Stream closed
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    return nextBuffer() ? current.get() & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!nextBuffer()) {
+      return -1;
+    }
+    int n = Math.min(len, current.remaining());
+    current.get(b, off, n);
+    return n;
+  }
+
+  /**
+   * Makes sure {@link #current} has remaining data, handing consumed buffers back to the reader thread.
+   *
+   * @return <code>true</code> if data is available, <code>false</code> at EOF
+   * @throws IOException if an I/O error has occurred on the reader thread
+   */
+  private boolean nextBuffer() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    while (current == null || !current.hasRemaining()) {
+      if (current != null) {
+        freeBuffers.add(current);
+        current = null;
+      }
+      if (eof) {
+        return false;
+      }
+
+      Object next;
+      try {
+        next = filledBuffers.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for data");
+      }
+      if (next == EOF_MARKER) {
+        eof = true;
+        return false;
+      } else if (next instanceof IOException) {
+        eof = true;
+        throw (IOException) next;
+      }
+      current = (ByteBuffer) next;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of bytes left in the buffer being read.
+   */
+  @Override
+  public int available() throws IOException {
+    return current != null ? current.remaining() : 0;
+  }
+
+  /**
+   * Stops the reader thread and closes the underlying channel.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      reader.interrupt();
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11;
+
+import jenkins.plugins.xunit.tc11.mht.MHTArchive;
+import jenkins.plugins.xunit.tc11.mht.MHTEntry;
+import jenkins.plugins.xunit.tc11.mht.MHTException;
+import jenkins.plugins.xunit.tc11.mht.MHTInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MHTArchiveTest {
+
+  File getFile(String file) throws Exception {
+    return new File(this.getClass().getResource(file).toURI());
+  }
+
+  static byte[] readFully(InputStream is) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte buffer[] = new byte[1024];
+    int readBytes;
+    while ((readBytes = is.read(buffer)) > 0) {
+      out.write(buffer, 0, readBytes);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testRandomAccess() throws Exception {
+    File file = this.getFile("TC12-testProjectSuite.mht");
+    List<String> names = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+
+    try (MHTInputStream is = new MHTInputStream(new FileInputStream(file))) {
+      MHTEntry entry;
+      while ((entry = is.getNextEntry()) != null) {
+        names.add(entry.getName());
+        contents.add(readFully(is));
+      }
+    }
+
+    try (MHTArchive archive = new MHTArchive(file)) {
+      Assert.assertEquals("http://localhost/", archive.getBaseUrl());
+      Assert.assertEquals(names.size(), archive.getEntries().size());
+
+      // Read entries in reverse order
+      List<MHTEntry> entries = new ArrayList<>(archive.getEntries());
+      Collections.reverse(entries);
+      for (MHTEntry entry : entries) {
+        int idx = names.lastIndexOf(entry.getName());
+        Assert.assertTrue("Unexpected entry '" + entry.getName() + "'", idx >= 0);
+        Assert.assertEquals("base64", entry.getEncoding());
+        try (InputStream is = archive.openEntry(entry)) {
+          Assert.assertArrayEquals("Entry '" + entry.getName() + "' does not have expected content.",
+            contents.get(idx), readFully(is));
+        }
+        names.set(idx, null);
+      }
+
+      Assert.assertNotNull(archive.getEntry("_root.js"));
+      Assert.assertNull(archive.getEntry("unknown.js"));
+      Assert.assertNull(archive.openEntry("unknown.js"));
+    }
+  }
+
+  @Test
+  public void testMemoryMapped() throws Exception {
+    File file = this.getFile("TC12-testProjectSuite.mht");
+
+    try (MHTArchive archive = new MHTArchive(file); MHTArchive mapped = new MHTArchive(file, true)) {
+      Assert.assertEquals(archive.getBaseUrl(), mapped.getBaseUrl());
+      Assert.assertEquals(archive.getEntries().size(), mapped.getEntries().size());
+
+      for (int i = 0; i < archive.getEntries().size(); i++) {
+        MHTEntry entry = archive.getEntries().get(i);
+        MHTEntry mappedEntry = mapped.getEntries().get(i);
+        Assert.assertEquals(entry.getName(), mappedEntry.getName());
+        Assert.assertEquals(entry.getOffset(), mappedEntry.getOffset());
+        Assert.assertEquals(entry.getLength(), mappedEntry.getLength());
+        try (InputStream is = archive.openEntry(entry); InputStream mis = mapped.openEntry(mappedEntry)) {
+          Assert.assertArrayEquals("Entry '" + entry.getName() + "' does not have expected content.", readFully(is), readFully(mis));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testProcessEntries() throws Exception {
+    try (MHTArchive archive = new MHTArchive(this.getFile("TC12-testProjectSuite.mht"))) {
+      List<MHTEntry> entries = archive.getEntries();
+      MHTArchive.EntryProcessor<byte[]> processor = (MHTEntry entry, InputStream data) -> readFully(data);
+
+      List<byte[]> sequential = archive.processEntries(entries, processor, 1);
+      List<byte[]> parallel = archive.processEntries(entries, processor, 4);
+      Assert.assertEquals(entries.size(), parallel.size());
+      for (int i = 0; i < entries.size(); i++) {
+        Assert.assertArrayEquals("Entry '" + entries.get(i).getName() + "' does not have expected content.", sequential.get(i), parallel.get(i));
+      }
+
+      // The failure of the first failing entry is reported
+      final String first = entries.get(1).getName();
+      final String second = entries.get(entries.size() - 1).getName();
+      try {
+        archive.processEntries(entries, (MHTEntry entry, InputStream data) -> {
+          if (entry.getName().equals(first) || entry.getName().equals(second)) {
+            throw new IOException(entry.getName());
+          }
+          return readFully(data);
+        }, 4);
+        Assert.fail("Processing failure should be propagated");
+      } catch (IOException e) {
+        Assert.assertEquals(first, e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testIdenticalEntries() throws Exception {
+    try (MHTArchive archive = new MHTArchive(this.getFile("TC12-testProjectSuite.mht"))) {
+      List<MHTEntry> entries = archive.getEntries();
+      Map<MHTEntry, MHTEntry> identicalEntries = archive.findIdenticalEntries(entries);
+      for (Map.Entry<MHTEntry, MHTEntry> identical : identicalEntries.entrySet()) {
+        MHTEntry entry = identical.getKey();
+        MHTEntry canonical = identical.getValue();
+        Assert.assertFalse(identicalEntries.containsKey(canonical));
+        Assert.assertTrue("Canonical entry must come first", entries.indexOf(canonical) < entries.indexOf(entry));
+        try (InputStream is = archive.openEntry(entry); InputStream cis = archive.openEntry(canonical)) {
+          Assert.assertArrayEquals("Entry '" + entry.getName() + "' differs from '" + canonical.getName() + "'", readFully(cis), readFully(is));
+        }
+      }
+      Assert.assertEquals(42, identicalEntries.size());
+
+      // Only the given entries are compared
+      MHTEntry entry = identicalEntries.keySet().iterator().next();
+      Assert.assertTrue(archive.findIdenticalEntries(Collections.singletonList(entry)).isEmpty());
+      Assert.assertEquals(Collections.singletonMap(entry, identicalEntries.get(entry)),
+        archive.findIdenticalEntries(Arrays.asList(identicalEntries.get(entry), entry)));
+    }
+  }
+
+  @Test
+  public void testBadEntryEncoding() throws Exception {
+    try (MHTArchive archive = new MHTArchive(this.getFile("MHTTest11-testBadEntryEncoding.mht"))) {
+      MHTEntry entry = archive.getEntry("mytext.txt");
+      Assert.assertNotNull(entry);
+      Assert.assertEquals("quoted-printable", entry.getEncoding());
+      try {
+        archive.openEntry(entry);
+        Assert.fail("Entry with unsupported encoding should not be opened");
+      } catch (MHTException e) {
+        Assert.assertEquals("Unsupported encoding for entry 'mytext.txt' found (only 'base64' is supported): quoted-printable",
+          e.getMessage());
+      }
+      try {
+        archive.processEntries(archive.getEntries(), (MHTEntry e, InputStream data) -> readFully(data), 4);
+        Assert.fail("Entry with unsupported encoding should not be processed");
+      } catch (MHTException e) {
+        Assert.assertEquals("Unsupported encoding for entry 'mytext.txt' found (only 'base64' is supported): quoted-printable",
+          e.getMessage());
+      }
+    }
+  }
+}
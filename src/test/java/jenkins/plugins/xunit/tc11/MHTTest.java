@@ -25,14 +25,21 @@ package jenkins.plugins.xunit.tc11;
 import jenkins.plugins.xunit.tc11.mht.MHTEntry;
 import jenkins.plugins.xunit.tc11.mht.MHTException;
 import jenkins.plugins.xunit.tc11.mht.MHTInputStream;
+import jenkins.plugins.xunit.tc11.mht.MHTLimitException;
+import jenkins.plugins.xunit.tc11.mht.MHTLimits;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -118,6 +125,242 @@ public class MHTTest {
     }
   }
 
+  static final String MHT_HEADER = "<!-- saved from url=(0017)http://localhost/ -->\r\n"
+    + "From: <TestComplete>\r\n"
+    + "Subject: TestComplete Log Files\r\n"
+    + "MIME-Version: 1.0\r\n"
+    + "Content-Type: multipart/related;\r\n"
+    + "\tboundary=\"----=915B31CA7CF84D4B802289EF94B1C0CF\";\r\n"
+    + "\ttype=\"text/html\"\r\n"
+    + "\r\n"
+    + "This is a multi-part message in MIME format.\r\n"
+    + "\r\n";
+
+  static final String MHT_BOUNDARY = "------=915B31CA7CF84D4B802289EF94B1C0CF";
+
+  static String mhtEntry(String name, String contentType, String eol, String... base64Lines) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(MHT_BOUNDARY).append(eol);
+    sb.append("Content-Type: ").append(contentType).append(eol);
+    sb.append("Content-Transfer-Encoding: base64").append(eol);
+    sb.append("Content-Location: http://localhost/").append(name).append(eol);
+    sb.append(eol);
+    for (String line : base64Lines) {
+      sb.append(line).append(eol);
+    }
+    sb.append(eol);
+    return sb.toString();
+  }
+
+  static MHTInputStream getMHTInputStreamFromString(String content) throws Exception {
+    return new MHTInputStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  static String readEntry(MHTInputStream is) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte buffer[] = new byte[5];
+    int readBytes;
+    while ((readBytes = is.read(buffer)) > 0) {
+      out.write(buffer, 0, readBytes);
+    }
+    return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+  }
+
+  @Test
+  public void testLineTerminators() throws Exception {
+    String content = MHT_HEADER
+      + mhtEntry("crlf.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + mhtEntry("lf.txt", "text/plain", "\n", "SGVsbG8g", "V29ybGQ=")
+      + mhtEntry("cr.txt", "text/plain", "\r", "SGVsbG8g", "V29ybGQ=")
+      + MHT_BOUNDARY + "--";
+
+    MHTInputStream is = getMHTInputStreamFromString(content);
+    try {
+      for (String name : new String[]{"crlf.txt", "lf.txt", "cr.txt"}) {
+        MHTEntry entry = is.getNextEntry();
+        Assert.assertNotNull("Entry '" + name + "' not found", entry);
+        Assert.assertEquals(name, entry.getName());
+        Assert.assertEquals("text/plain", entry.getContentType());
+        Assert.assertEquals("Hello World", readEntry(is));
+      }
+      Assert.assertNull(is.getNextEntry());
+    } finally {
+      is.close();
+    }
+  }
+
+  @Test
+  public void testQuantumAcrossLines() throws Exception {
+    // "Hello World" encoded as "SGVsbG8gV29ybGQ=" split at positions that are not
+    // multiple of 4
+    String content = MHT_HEADER
+      + mhtEntry("split.txt", "text/plain", "\r\n", "SGV", "sbG8gV2", "9ybGQ", "=")
+      + MHT_BOUNDARY + "--";
+
+    MHTInputStream is = getMHTInputStreamFromString(content);
+    try {
+      Assert.assertNotNull(is.getNextEntry());
+      Assert.assertEquals("Hello World", readEntry(is));
+    } finally {
+      is.close();
+    }
+  }
+
+  @Test
+  public void testSkipEntries() throws Exception {
+    String content = MHT_HEADER
+      + mhtEntry("image.gif", "image/gif", "\r\n", "R0lGODlhAQABAIAAAP///wAAACH5BAEAAAAALAAAAAABAAEAAAICRAEAOw==")
+      + mhtEntry("first.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + mhtEntry("second.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + mhtEntry("third.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + MHT_BOUNDARY + "--";
+
+    MHTInputStream is = getMHTInputStreamFromString(content);
+    try {
+      // Skip a whole entry by name
+      MHTEntry entry = is.getNextEntry("first.txt");
+      Assert.assertNotNull(entry);
+      Assert.assertEquals("first.txt", entry.getName());
+
+      // Skip the rest of a partially read entry
+      byte buffer[] = new byte[3];
+      Assert.assertEquals(3, is.read(buffer));
+      entry = is.getNextEntry();
+      Assert.assertEquals("second.txt", entry.getName());
+
+      entry = is.getNextEntry("third.txt");
+      Assert.assertEquals("third.txt", entry.getName());
+      Assert.assertEquals("Hello World", readEntry(is));
+
+      Assert.assertNull(is.getNextEntry("image.gif"));
+    } finally {
+      is.close();
+    }
+  }
+
+  @Test
+  public void testSkip() throws Exception {
+    // "Hello World, hello MHT" split in lines of complete quanta and
+    // a quantum across lines
+    String content = MHT_HEADER
+      + mhtEntry("skip.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQsIGhl", "bGxvIE", "1IVA==")
+      + mhtEntry("next.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + MHT_BOUNDARY + "--";
+
+    MHTInputStream is = getMHTInputStreamFromString(content);
+    try {
+      Assert.assertNotNull(is.getNextEntry());
+      Assert.assertEquals(0, is.skip(0));
+      Assert.assertEquals(1, is.skip(1));
+      Assert.assertEquals('e', is.read());
+      // Skip rest of first line and a whole line
+      Assert.assertEquals(13, is.skip(13));
+      Assert.assertEquals('l', is.read());
+      // Skip across the quantum split between lines
+      Assert.assertEquals(4, is.skip(4));
+      Assert.assertEquals("HT", readEntry(is));
+      Assert.assertEquals(0, is.skip(10));
+
+      Assert.assertNotNull(is.getNextEntry());
+      Assert.assertEquals(11, is.skip(100));
+      Assert.assertEquals(-1, is.read());
+      Assert.assertNull(is.getNextEntry());
+    } finally {
+      is.close();
+    }
+  }
+
+  @Test
+  public void testCloseEntry() throws Exception {
+    String content = MHT_HEADER
+      + mhtEntry("first.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + mhtEntry("second.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + MHT_BOUNDARY + "--";
+
+    MHTInputStream is = getMHTInputStreamFromString(content);
+    try {
+      Assert.assertEquals("first.txt", is.getNextEntry().getName());
+      Assert.assertEquals('H', is.read());
+      is.closeEntry();
+      Assert.assertEquals(0, is.available());
+      is.closeEntry();
+
+      Assert.assertEquals("second.txt", is.getNextEntry().getName());
+      Assert.assertEquals("Hello World", readEntry(is));
+      is.closeEntry();
+      Assert.assertNull(is.getNextEntry());
+    } finally {
+      is.close();
+    }
+  }
+
+  @Test
+  public void testAvailable() throws Exception {
+    String content = MHT_HEADER
+      + mhtEntry("avail.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + MHT_BOUNDARY + "--";
+
+    MHTInputStream is = getMHTInputStreamFromString(content);
+    try {
+      Assert.assertEquals(0, is.available());
+      Assert.assertNotNull(is.getNextEntry());
+      Assert.assertEquals(1, is.available());
+      Assert.assertEquals('H', is.read());
+      Assert.assertEquals(5, is.available());
+      Assert.assertEquals(5, is.skip(5));
+      Assert.assertEquals(1, is.available());
+
+      // Buffered wrappers read until the end of the entry
+      Assert.assertEquals("World", IOUtils.toString(new BufferedInputStream(is), StandardCharsets.US_ASCII));
+      Assert.assertEquals(0, is.available());
+    } finally {
+      is.close();
+    }
+  }
+
+  @Test
+  public void testLimits() throws Exception {
+    String content = MHT_HEADER
+      + mhtEntry("first.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + mhtEntry("second.txt", "text/plain", "\r\n", "SGVsbG8g", "V29ybGQ=")
+      + MHT_BOUNDARY + "--";
+
+    // Entry data and header without line breaks
+    StringBuilder noLineBreaks = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      noLineBreaks.append("AAAA");
+    }
+
+    assertLimitExceeded(MHT_HEADER + mhtEntry("long.txt", "text/plain", "\r\n", noLineBreaks.toString()),
+      MHTLimits.DEFAULT.withMaxLineLength(100), MHTLimits.MAX_LINE_LENGTH);
+    assertLimitExceeded(noLineBreaks + MHT_HEADER, MHTLimits.DEFAULT.withMaxLineLength(100), MHTLimits.MAX_LINE_LENGTH);
+    assertLimitExceeded(content, MHTLimits.DEFAULT.withMaxEntrySize(10), MHTLimits.MAX_ENTRY_SIZE);
+    assertLimitExceeded(content, MHTLimits.DEFAULT.withMaxTotalSize(15), MHTLimits.MAX_TOTAL_SIZE);
+    assertLimitExceeded(content, MHTLimits.DEFAULT.withMaxEntryCount(1), MHTLimits.MAX_ENTRY_COUNT);
+    assertLimitExceeded(content, MHTLimits.DEFAULT.withMaxHeaderLines(4), MHTLimits.MAX_HEADER_LINES);
+
+    // Limits reached exactly do not fail
+    MHTLimits limits = MHTLimits.DEFAULT.withMaxEntrySize(11).withMaxTotalSize(22).withMaxEntryCount(2).withMaxLineLength(50)
+      .withMaxHeaderLines(5);
+    try (MHTInputStream is = new MHTInputStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)), limits)) {
+      while (is.getNextEntry() != null) {
+        Assert.assertEquals("Hello World", readEntry(is));
+      }
+    }
+  }
+
+  private static void assertLimitExceeded(String content, MHTLimits limits, String limit) throws Exception {
+    try (MHTInputStream is = new MHTInputStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)), limits)) {
+      while (is.getNextEntry() != null) {
+        readEntry(is);
+      }
+      Assert.fail("Limit '" + limit + "' should have been exceeded");
+    } catch (MHTLimitException e) {
+      Assert.assertEquals(limit, e.getLimit());
+      Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("MHT limit '" + limit + "'"));
+    }
+  }
+
   @Test
   public void testUninitializedRead() throws Exception {
     MHTInputStream is = this.getMHTInputStream("MHTTest11-testContent.mht");
@@ -139,11 +382,10 @@ public class MHTTest {
     }
   }
 
-  private static final String UNSUPPORTED_METHODS[] = {"mark", "skip", "reset"};
+  private static final String UNSUPPORTED_METHODS[] = {"mark", "reset"};
   private static final Class<?> UNSUPPORTED_METHOD_ARG_TYPES[] = {int.class,
-    long.class,
     null};
-  private static final Object UNSUPPORTED_METHOD_ARGS[] = {10, 5, null};
+  private static final Object UNSUPPORTED_METHOD_ARGS[] = {10, null};
 
   @Test
   public void testUnsupportedOperations() throws Exception {
@@ -194,15 +436,8 @@ public class MHTTest {
     this.testFail("MHTTest11-testBadEntryEncoding.mht", "mytext.txt", MHTException.class,
       "Unsupported encoding for entry 'mytext.txt' found (only 'base64' is supported): quoted-printable");
 
-    /*
-     * Comment out if causes problems on other systems. Tested on MacOSX 10.6.8 with
-     * Java(TM) SE Runtime Environment (build 1.6.0_65-b14-462-10M4609). This is the
-     * exception obtained but seems quite an uncontrollable error (no sanity check
-     * on input is performed). I presume that on other systems with other JVM
-     * versions (and JAXB implementations) this error may not be the same.
-     */
-    this.testFail("MHTTest11-testBadEntryData.mht", "index.htm", ArrayIndexOutOfBoundsException.class,
-      null);
+    this.testFail("MHTTest11-testBadEntryData.mht", "index.htm", MHTException.class,
+      "Corrupt base64 data in entry 'index.htm'");
   }
 
   private void testFail(String mhtFile, String entryName, Class<? extends Exception> expectedErrorType,
@@ -0,0 +1,114 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jenkins.plugins.xunit.tc11.mht.MHTEntry;
+
+public class PictureExporterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testExport() throws Exception {
+    File dir = new File(folder.getRoot(), "report-pictures");
+    PictureExporter exporter = new PictureExporter(dir);
+
+    MHTEntry screenshot = new MHTEntry("screenshot.png", "image/png") {
+    };
+    MHTEntry icon = new MHTEntry("icon.gif", "image/gif") {
+    };
+    assertTrue(PictureExporter.isPicture(screenshot));
+    assertFalse(PictureExporter.isPicture(icon));
+
+    byte data[] = new byte[200000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    exporter.export(screenshot, new ByteArrayInputStream(data));
+    // Only the first of several entries with the same name is exported
+    exporter.export(screenshot, new ByteArrayInputStream(new byte[1]));
+    exporter.export(new MHTEntry("unused.png", "image/png") {
+    }, new ByteArrayInputStream(new byte[1]));
+
+    File file = exporter.getFile("screenshot.png");
+    assertEquals(new File(dir, "screenshot.png"), file);
+    assertArrayEquals(data, FileUtils.readFileToByteArray(file));
+
+    exporter.retain(Collections.singleton("screenshot.png"));
+    assertTrue(file.isFile());
+    assertFalse(new File(dir, "unused.png").exists());
+
+    exporter.retain(Collections.<String>emptySet());
+    assertFalse(dir.exists());
+  }
+
+  @Test
+  public void testExistingDirectory() throws Exception {
+    File dir = folder.newFolder("report-pictures");
+    File userFile = new File(dir, "screenshot.png");
+    FileUtils.writeByteArrayToFile(userFile, new byte[] {1, 2, 3});
+
+    PictureExporter exporter = new PictureExporter(dir);
+    assertEquals(new File(folder.getRoot(), "report-pictures-1"), exporter.getDirectory());
+    exporter.export(new MHTEntry("screenshot.png", "image/png") {
+    }, new ByteArrayInputStream(new byte[1]));
+    assertEquals(new File(exporter.getDirectory(), "screenshot.png"), exporter.getFile("screenshot.png"));
+
+    exporter.retain(Collections.<String>emptySet());
+    assertFalse(exporter.getDirectory().exists());
+    assertArrayEquals(new byte[] {1, 2, 3}, FileUtils.readFileToByteArray(userFile));
+  }
+
+  @Test
+  public void testHostileNames() throws Exception {
+    File dir = new File(folder.getRoot(), "reports/report-pictures");
+    PictureExporter exporter = new PictureExporter(dir);
+
+    String names[] = {"../evil.png", "sub/../../evil.png", "sub/../../../evil.png", "..", "", new File(folder.getRoot(), "evil.png").getAbsolutePath()};
+    for (String name : names) {
+      exporter.export(new MHTEntry(name, "image/png") {
+      }, new ByteArrayInputStream(new byte[1]));
+      assertNull(name, exporter.getFile(name));
+    }
+    assertFalse(new File(folder.getRoot(), "evil.png").exists());
+    assertFalse(new File(folder.getRoot(), "reports/evil.png").exists());
+
+    // Names with subdirectories stay within the directory
+    exporter.export(new MHTEntry("sub/screenshot.png", "image/png") {
+    }, new ByteArrayInputStream(new byte[1]));
+    assertEquals(new File(dir, "sub/screenshot.png"), exporter.getFile("sub/screenshot.png"));
+    assertTrue(exporter.getFile("sub/screenshot.png").isFile());
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11;
+
+import jenkins.plugins.xunit.tc11.mht.MHTEntry;
+import jenkins.plugins.xunit.tc11.mht.MHTInputStream;
+import jenkins.plugins.xunit.tc11.mht.ReadAheadInputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static jenkins.plugins.xunit.tc11.MHTArchiveTest.readFully;
+
+public class ReadAheadInputStreamTest {
+
+  File getFile(String file) throws Exception {
+    return new File(this.getClass().getResource(file).toURI());
+  }
+
+  @Test
+  public void testReadAhead() throws Exception {
+    File file = this.getFile("TC12-testProjectSuite.mht");
+
+    try (MHTInputStream is = new MHTInputStream(new FileInputStream(file));
+        MHTInputStream ris = new MHTInputStream(new ReadAheadInputStream(new FileInputStream(file), 1000, 2))) {
+      Assert.assertEquals(is.getBaseUrl(), ris.getBaseUrl());
+      MHTEntry entry;
+      while ((entry = is.getNextEntry()) != null) {
+        MHTEntry readAheadEntry = ris.getNextEntry();
+        Assert.assertNotNull(readAheadEntry);
+        Assert.assertEquals(entry.getName(), readAheadEntry.getName());
+        Assert.assertArrayEquals("Entry '" + entry.getName() + "' does not have expected content.", readFully(is), readFully(ris));
+      }
+      Assert.assertNull(ris.getNextEntry());
+    }
+  }
+}
@@ -23,11 +23,25 @@
  */
 package jenkins.plugins.xunit.tc11;
 
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.lib.dtkit.util.converter.ConversionException;
 import org.junit.Test;
 
+import jenkins.plugins.xunit.tc11.mht.MHTArchive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 public class TestCompleteTest extends AbstractXUnitXSLTest {
 
   @Test
@@ -56,6 +70,138 @@ public class TestCompleteTest extends AbstractXUnitXSLTest {
       "TC12-testProjectSuite.mht", "JUnit-TC12-testProjectSuite.xml");
   }
 
+  @Test
+  public void testProjectSuiteGzip() throws Exception {
+    convertAndValidate(TestCompleteInputMetric.class,
+      "TC12-testProjectSuite.mht.gz", "JUnit-TC12-testProjectSuite.xml");
+  }
+
+  @Test
+  public void testProjectSuiteZip() throws Exception {
+    convertAndValidate(TestCompleteInputMetric.class,
+      "TC11-testProjectSuite.zip", "JUnit-TC11-testProjectSuite.xml");
+  }
+
+  @Test
+  public void testProjectSuiteReadAhead() throws Exception {
+    System.setProperty(TestCompleteInputMetric.PROPERTY_READ_AHEAD_DEPTH, "2");
+    System.setProperty(TestCompleteInputMetric.PROPERTY_READ_AHEAD_BUFFER_SIZE, "4096");
+    try {
+      convertAndValidate(TestCompleteInputMetric.class,
+        "TC12-testProjectSuite.mht", "JUnit-TC12-testProjectSuite.xml");
+      convertAndValidate(TestCompleteInputMetric.class,
+        "TC12-testProjectSuite.mht.gz", "JUnit-TC12-testProjectSuite.xml");
+    } finally {
+      System.clearProperty(TestCompleteInputMetric.PROPERTY_READ_AHEAD_DEPTH);
+      System.clearProperty(TestCompleteInputMetric.PROPERTY_READ_AHEAD_BUFFER_SIZE);
+    }
+  }
+
+  @Test
+  public void testProjectSuiteMemoryMapped() throws Exception {
+    System.setProperty(TestCompleteInputMetric.PROPERTY_MEMORY_MAPPED_SIZE, "0");
+    try {
+      convertAndValidate(TestCompleteInputMetric.class,
+        "TC12-testProjectSuite.mht", "JUnit-TC12-testProjectSuite.xml");
+    } finally {
+      System.clearProperty(TestCompleteInputMetric.PROPERTY_MEMORY_MAPPED_SIZE);
+    }
+  }
+
+  @Test
+  public void testProjectSuiteExtractionBackends() throws Exception {
+    try {
+      for (String backend : new String[] {"HEAP", "OFF_HEAP", "DISK"}) {
+        System.setProperty(TestCompleteInputMetric.PROPERTY_EXTRACTION_BACKEND, backend);
+        convertAndValidate(TestCompleteInputMetric.class,
+          "TC12-testProjectSuite.mht", "JUnit-TC12-testProjectSuite.xml");
+        convertAndValidate(TestCompleteInputMetric.class,
+          "TC11-testProjectSuite.mht", "JUnit-TC11-testProjectSuite.xml");
+      }
+
+      // Spill to disk in the middle of the extraction
+      System.setProperty(TestCompleteInputMetric.PROPERTY_EXTRACTION_BACKEND, "HEAP");
+      System.setProperty(TestCompleteInputMetric.PROPERTY_MAX_MEMORY_SIZE, "50000");
+      convertAndValidate(TestCompleteInputMetric.class,
+        "TC12-testProjectSuite.mht", "JUnit-TC12-testProjectSuite.xml");
+      convertAndValidate(TestCompleteInputMetric.class,
+        "TC11-testProjectSuite.mht", "JUnit-TC11-testProjectSuite.xml");
+
+      // Extracted to disk right away
+      System.clearProperty(TestCompleteInputMetric.PROPERTY_EXTRACTION_BACKEND);
+      convertAndValidate(TestCompleteInputMetric.class,
+        "TC12-testProjectSuite.mht", "JUnit-TC12-testProjectSuite.xml");
+    } finally {
+      System.clearProperty(TestCompleteInputMetric.PROPERTY_EXTRACTION_BACKEND);
+      System.clearProperty(TestCompleteInputMetric.PROPERTY_MAX_MEMORY_SIZE);
+    }
+  }
+
+  @Test
+  public void testProjectSuiteExportPictures() throws Exception {
+    System.setProperty(TestCompleteInputMetric.PROPERTY_EXPORT_PICTURES, "true");
+    try {
+      // No test failed with a screenshot, so no picture is kept
+      convertAndValidate(TestCompleteInputMetric.class,
+        "TC12-testProjectSuite.mht", "JUnit-TC12-testProjectSuite.xml");
+      convertAndValidate(TestCompleteInputMetric.class,
+        "TC12-testProjectSuite.mht.gz", "JUnit-TC12-testProjectSuite.xml");
+    } finally {
+      System.clearProperty(TestCompleteInputMetric.PROPERTY_EXPORT_PICTURES);
+    }
+  }
+
+  @Test
+  public void testExportPicturesOfFailures() throws Exception {
+    System.setProperty(TestCompleteInputMetric.PROPERTY_EXPORT_PICTURES, "true");
+    try {
+      assertScreenshotExported();
+      // Read sequentially
+      System.setProperty(TestCompleteInputMetric.PROPERTY_READ_AHEAD_DEPTH, "2");
+      assertScreenshotExported();
+    } finally {
+      System.clearProperty(TestCompleteInputMetric.PROPERTY_EXPORT_PICTURES);
+      System.clearProperty(TestCompleteInputMetric.PROPERTY_READ_AHEAD_DEPTH);
+    }
+  }
+
+  /**
+   * The error of test 'KT3' has screenshot 'shot_1.png' attached, the MHT file also holds picture 'icons.png' which is not attached to any error
+   */
+  private void assertScreenshotExported() throws Exception {
+    File inputFile = new File(this.getClass().getResource("TC12-testProjectSuiteScreenshot.mht").toURI());
+    File dir = Files.createTempDirectory("tc11").toFile();
+    try {
+      File outputFile = new File(dir, "result.xml");
+      new TestCompleteInputMetric().convert(inputFile, outputFile, null);
+
+      File picture = new File(new File(dir, "result-pictures"), "shot_1.png");
+      String result = FileUtils.readFileToString(outputFile, StandardCharsets.UTF_8);
+      assertTrue(result, result.contains("[[ATTACHMENT|" + picture.getAbsolutePath() + "]]"));
+      assertArrayEquals(new String[] {"shot_1.png"}, picture.getParentFile().list());
+      try (MHTArchive archive = new MHTArchive(inputFile); InputStream is = archive.openEntry("shot_1.png")) {
+        assertArrayEquals(IOUtils.toByteArray(is), FileUtils.readFileToByteArray(picture));
+      }
+    } finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void testNoRootEntry() throws Exception {
+    // The corrupt entry data is never decoded since the file is rejected
+    // before extracting anything
+    File inputFile = new File(this.getClass().getResource("MHTTest-testBadEntryData.mht").toURI());
+    File outputFile = File.createTempFile("result", "xml");
+    outputFile.deleteOnExit();
+    try {
+      new TestCompleteInputMetric().convert(inputFile, outputFile, null);
+      fail("ConversionException expected");
+    } catch (ConversionException e) {
+      assertEquals("Invalid TestComplete MHT file 'MHTTest-testBadEntryData.mht'. No '_root.js' or 'root.xml' found.", e.getMessage());
+    }
+  }
+
   @Test
   public void testSingleKeywordTest() throws Exception {
     convertAndValidate(TestCompleteInputMetric.class,
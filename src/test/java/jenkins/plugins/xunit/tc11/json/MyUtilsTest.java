@@ -23,7 +23,12 @@
  */
 package jenkins.plugins.xunit.tc11.json;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -89,6 +94,81 @@ public class MyUtilsTest {
     fail("The test case is a prototype.");
   }
 
+  /**
+   * Test of readJSONEntry method, of class MyUtils.
+   */
+  @Test
+  public void testReadJSONEntry() throws Exception {
+    SpillingEntryStore store = new SpillingEntryStore(SpillingEntryStore.Backend.HEAP, Long.MAX_VALUE);
+    assertTrue(store.putEntry("_root.js", new ByteArrayInputStream("jsonp(\"root\", {\"a\": \"\u00e4\"})".getBytes(StandardCharsets.UTF_8))));
+    assertFalse(store.putEntry("_root.js", new ByteArrayInputStream(new byte[0])));
+
+    assertEquals("jsonp(\"root\", {\"a\": \"\u00e4\"})", MyUtils.readJSONEntry(store, "_root.js", "UTF-8"));
+    try {
+      MyUtils.readJSONEntry(store, "missing.js", "UTF-8");
+      fail("FileNotFoundException expected");
+    } catch (FileNotFoundException e) {
+      // expected
+    }
+  }
+
+  private static JSONObject parseJSONP(String content) throws Exception {
+    return MyUtils.parseJSONP(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "UTF-8");
+  }
+
+  /**
+   * Test of parseJSONP method, of class MyUtils.
+   */
+  @Test
+  public void testParseJSONP() throws Exception {
+    JSONObject result = parseJSONP("\ufeff_json_loaded(\"_root.js\",{\"name\":\"Test (1), part 2\",\"children\":[]});\r\n");
+    assertEquals("Test (1), part 2", result.getString("name"));
+
+    // Parentheses and commas in the first argument
+    result = parseJSONP("_json_loaded(\"Log (1), \\\"copy\\\".js\", {\"a\":[1,2]})");
+    assertEquals(2, result.getJSONArray("a").length());
+
+    // No first argument
+    result = parseJSONP("load({\"a\":\")\"})");
+    assertEquals(")", result.getString("a"));
+
+    assertNull(parseJSONP("_json_loaded(\"_root.js\",)"));
+    assertNull(parseJSONP(""));
+  }
+
+  private static long millis(int year, int month, int day, int hour, int minute, int second) {
+    return LocalDateTime.of(year, month, day, hour, minute, second).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  /**
+   * All TestComplete layouts are parsed, also when the layout changes within a log
+   */
+  @Test
+  public void testConvertTcDateTime() {
+    assertEquals("2017-01-10T17:48:40.000", MyUtils.convertTc2DateTime("01/10/2017 5:48:40 PM"));
+    assertEquals("2017-01-10T05:48:40.000", MyUtils.convertTc2DateTime("01/10/2017 5:48:40 AM"));
+    assertEquals("2017-01-01T00:30:00.000", MyUtils.convertTc2DateTime("1/1/2017 12:30:00 AM"));
+    assertEquals("2017-01-10T17:48:40.000", MyUtils.convertTc2DateTime("10/01/2017 17:48:40"));
+    assertEquals("2017-01-11T10:26:27.000", MyUtils.convertTc2DateTime("11.01.2017 10:26:27"));
+    assertEquals("", MyUtils.convertTc2DateTime("11.01.2017"));
+    assertEquals("", MyUtils.convertTc2DateTime(""));
+    assertEquals("", MyUtils.convertTc2DateTime((String) null));
+
+    assertEquals(millis(2017, 1, 11, 10, 26, 27), MyUtils.convertTcDateTime2MillSec("11.01.2017 10:26:27"));
+    assertEquals(millis(2016, 2, 29, 13, 2, 3), MyUtils.convertTcDateTime2MillSec("02/29/2016 1:02:03 PM"));
+    assertEquals(0, MyUtils.convertTcDateTime2MillSec("11.01.2017 10:26:27 PM"));
+
+    TcDateTimeFormat format = new TcDateTimeFormat();
+    assertEquals(millis(2017, 1, 11, 10, 26, 27), format.toMilliSec("11.01.2017 10:26:27"));
+    assertEquals(millis(2017, 2, 1, 0, 0, 0), format.toMilliSec("1/2/2017 0:0:0"));
+    assertEquals(millis(2017, 1, 11, 10, 26, 28), format.toMilliSec("11.01.2017 10:26:28"));
+  }
+
+  @Test
+  public void testConvertMillSec2DateTime() {
+    assertEquals("2017-01-11T10:26:27.438", MyUtils.convertTc2DateTime(millis(2017, 1, 11, 10, 26, 27) + 438));
+  }
+
   /**
    * Test of convertTc2DateTime method, of class MyUtils.
    */
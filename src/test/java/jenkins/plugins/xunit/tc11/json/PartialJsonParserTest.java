@@ -0,0 +1,78 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Test;
+
+public class PartialJsonParserTest {
+
+  private final PartialJsonParser parser = new PartialJsonParser(Arrays.asList("caption", "items"), 1);
+
+  @Test
+  public void testSkipsOtherFields() {
+    String json = "{\"name\":\"a]}\\\"\",\"columns\":[{\"x\":[1,2,{\"y\":\"}\"}]},null],\"count\":12,\"flag\" : true,"
+      + "\"caption\":\"Test\",\"items\":[{\"Message\":\"first\"},{\"Message\":\"second\"}]}";
+    JSONObject result = parser.parse(new JSONTokener(json));
+
+    assertEquals(2, result.length());
+    assertEquals("Test", result.getString("caption"));
+    JSONArray items = result.getJSONArray("items");
+    assertEquals(1, items.length());
+    assertEquals("first", items.getJSONObject(0).getString("Message"));
+  }
+
+  @Test
+  public void testStopsAfterSelectedFields() {
+    // Everything after the first item is never read
+    String json = "{\"caption\":\"Test\",\"items\":[{\"Message\":\"first\"},{\"Message\": broken";
+    JSONObject result = parser.parse(new JSONTokener(json));
+
+    assertEquals("Test", result.getString("caption"));
+    assertEquals("first", result.getJSONArray("items").getJSONObject(0).getString("Message"));
+  }
+
+  @Test
+  public void testSkipsRemainingElements() {
+    String json = "{\"items\":[{\"Message\":\"first\"},{\"Message\":\"[second\"}],\"caption\":\"Test\"}";
+    JSONObject result = parser.parse(new JSONTokener(json));
+
+    assertEquals("Test", result.getString("caption"));
+    assertEquals(1, result.getJSONArray("items").length());
+  }
+
+  @Test
+  public void testMissingFields() {
+    JSONObject result = parser.parse(new JSONTokener("{\"caption\":\"Test\",\"items\":[]}"));
+    assertEquals(0, result.getJSONArray("items").length());
+
+    result = parser.parse(new JSONTokener("{\"name\":\"Test\"}"));
+    assertEquals(0, result.length());
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jenkinsci.lib.dtkit.util.converter.ConversionException;
+import org.junit.Test;
+
+public class ProviderCacheTest {
+
+  /**
+   * Store of provider files counting how often every file is opened
+   */
+  private static class CountingStore implements EntryStore {
+
+    final Map<String, Integer> opened = new HashMap<>();
+
+    @Override
+    public boolean containsEntry(String name) {
+      return name.endsWith(".js");
+    }
+
+    @Override
+    public InputStream openEntry(String name) {
+      opened.merge(name, 1, Integer::sum);
+      String content = "_json_loaded(\"" + name + "\",{\"caption\":\"" + name + "\",\"items\":[{\"RunTime\":{\"msec\":1000}}]})";
+      return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testGetTimings() {
+    CountingStore store = new CountingStore();
+    ProviderCache cache = new ProviderCache(store, 2);
+
+    TimingTable a = cache.getTimings("a.js");
+    assertEquals(1, a.size());
+    assertEquals(1000, a.getRunTime(0));
+    assertSame(a, cache.getTimings("a.js"));
+    cache.getTimings("b.js");
+    cache.getTimings("a.js");
+    // b.js is the least recently used one
+    cache.getTimings("c.js");
+    assertSame(a, cache.getTimings("a.js"));
+    cache.getTimings("b.js");
+
+    assertEquals(Integer.valueOf(1), store.opened.get("a.js"));
+    assertEquals(Integer.valueOf(2), store.opened.get("b.js"));
+    assertEquals(Integer.valueOf(1), store.opened.get("c.js"));
+  }
+
+  @Test
+  public void testMissingEntry() {
+    try {
+      new ProviderCache(new CountingStore(), 2).getTimings("a.txt");
+      fail("ConversionException expected");
+    } catch (ConversionException e) {
+      assertEquals("Invalid TestComplete MHT file. No entry with 'a.txt' found.", e.getMessage());
+    }
+  }
+}
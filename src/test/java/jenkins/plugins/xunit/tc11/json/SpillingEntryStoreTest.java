@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class SpillingEntryStoreTest {
+
+  /**
+   * An entry is not visible to readers before its data has been stored completely
+   */
+  @Test
+  public void testEntryPublishedWhenStored() throws Exception {
+    for (SpillingEntryStore.Backend backend : SpillingEntryStore.Backend.values()) {
+      CountDownLatch reading = new CountDownLatch(1);
+      CountDownLatch resume = new CountDownLatch(1);
+      InputStream blocking = new InputStream() {
+        @Override
+        public int read() {
+          reading.countDown();
+          try {
+            resume.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return -1;
+        }
+      };
+      InputStream data = new SequenceInputStream(new ByteArrayInputStream("Hello ".getBytes(StandardCharsets.UTF_8)),
+        new SequenceInputStream(blocking, new ByteArrayInputStream("World".getBytes(StandardCharsets.UTF_8))));
+
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try (SpillingEntryStore store = new SpillingEntryStore(backend, Long.MAX_VALUE)) {
+        Future<Boolean> put = executor.submit(() -> store.putEntry("entry.js", data));
+        reading.await();
+        assertFalse(backend.name(), store.containsEntry("entry.js"));
+        assertNull(backend.name(), store.openEntry("entry.js"));
+        assertFalse(backend.name(), store.putEntry("entry.js", new ByteArrayInputStream(new byte[0])));
+        resume.countDown();
+
+        assertTrue(backend.name(), put.get());
+        assertTrue(backend.name(), store.containsEntry("entry.js"));
+        try (InputStream is = store.openEntry("entry.js")) {
+          assertEquals(backend.name(), "Hello World", IOUtils.toString(is, StandardCharsets.UTF_8));
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Entries bigger than the buffer chunks are read back completely, also if the budget is exceeded while they are added
+   */
+  @Test
+  public void testBigEntries() throws Exception {
+    byte data[] = new byte[300000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    for (SpillingEntryStore.Backend backend : SpillingEntryStore.Backend.values()) {
+      for (long budget : new long[] {Long.MAX_VALUE, 100000}) {
+        try (SpillingEntryStore store = new SpillingEntryStore(backend, budget)) {
+          assertTrue(store.putEntry("first.js", new ByteArrayInputStream(data)));
+          assertTrue(store.putEntry("second.js", new ByteArrayInputStream(data, 0, 10)));
+          assertEquals(budget == Long.MAX_VALUE ? backend : SpillingEntryStore.Backend.DISK, store.getBackend());
+          try (InputStream is = store.openEntry("first.js")) {
+            assertArrayEquals(backend.name(), data, IOUtils.toByteArray(is));
+          }
+          try (InputStream is = store.openEntry("second.js")) {
+            assertEquals(backend.name(), 10, IOUtils.toByteArray(is).length);
+          }
+        }
+      }
+    }
+  }
+}
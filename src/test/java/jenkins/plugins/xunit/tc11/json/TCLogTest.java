@@ -0,0 +1,227 @@
+/**
+ * The MIT License
+ * Copyright (c) 2017 Michael Gärtner and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.xunit.tc11.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.lib.dtkit.util.converter.ConversionException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TCLogTest {
+
+  private static void putEntry(SpillingEntryStore store, String name, String content) throws Exception {
+    store.putEntry(name, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String timing(long start, long end) {
+    return "{\"StartTime\":{\"msec\":" + start + ",\"text\":\"11.01.2017 10:26:27\"},"
+      + "\"EndTime\":{\"msec\":" + end + ",\"text\":\"11.01.2017 10:26:28\"},"
+      + "\"RunTime\":{\"msec\":" + (end - start) + ",\"text\":\"\"}}";
+  }
+
+  /**
+   * Every test log gets the timings found at its own position in the provider of its parent
+   */
+  @Test
+  public void testTimingsBySiblingPosition() throws Exception {
+    SpillingEntryStore store = new SpillingEntryStore(SpillingEntryStore.Backend.HEAP, Long.MAX_VALUE);
+    putEntry(store, "project__projectlog.js", "_json_loaded(\"Project__ProjectLog.js\",{\"items\":["
+      + timing(1000, 1100) + "," + timing(2000, 2300) + "]})");
+
+    JSONObject root = new JSONObject("{\"name\":\"Suite\",\"children\":[{\"name\":\"Project\","
+      + "\"providers\":[{\"href\":\"http://localhost/Project__ProjectLog.js\"}],"
+      + "\"children\":[{\"name\":\"Script Test Log [A]\",\"status\":0,\"children\":[]},"
+      + "{\"name\":\"Script Test Log [B]\",\"status\":0,\"children\":[]}]}]}");
+    TCLog log = new TCLog(root, store);
+
+    assertEquals(2, log.getTestCount());
+    long runTimeA = -1;
+    long runTimeB = -1;
+    for (TCLogItem item : log.getTCLogItems()) {
+      if (item.getName().endsWith("[A]")) {
+        runTimeA = item.getRunTime();
+        assertEquals(1000, item.getStartTimeInMilliSec());
+      } else {
+        runTimeB = item.getRunTime();
+        assertEquals(2000, item.getStartTimeInMilliSec());
+      }
+    }
+    assertEquals(100, runTimeA);
+    assertEquals(300, runTimeB);
+  }
+
+  private static JSONObject createSuite(SpillingEntryStore store, int count) throws Exception {
+    StringBuilder timings = new StringBuilder();
+    StringBuilder children = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        timings.append(',');
+        children.append(',');
+      }
+      timings.append(timing(1000 * i, 1000 * i + i));
+      children.append("{\"name\":\"Script Test Log [T" + i + "]\",\"status\":0,\"children\":[],"
+        + "\"providers\":[{\"href\":\"T" + i + ".js\"}]}");
+      putEntry(store, "t" + i + ".js", "_json_loaded(\"T" + i + ".js\",{\"caption\":\"T" + i + "\",\"items\":[]})");
+    }
+    putEntry(store, "project__projectlog.js", "_json_loaded(\"Project__ProjectLog.js\",{\"items\":[" + timings + "]})");
+    return new JSONObject("{\"name\":\"Suite\",\"children\":[{\"name\":\"Project\","
+      + "\"providers\":[{\"href\":\"http://localhost/Project__ProjectLog.js\"}],\"children\":[" + children + "]}]}");
+  }
+
+  /**
+   * Items created in parallel are the same and in the same order as items created sequentially
+   */
+  @Test
+  public void testParallelCreation() throws Exception {
+    SpillingEntryStore store = new SpillingEntryStore(SpillingEntryStore.Backend.HEAP, Long.MAX_VALUE);
+    JSONObject root = createSuite(store, 50);
+
+    TCLog sequential = new TCLog(root, store, 1);
+    TCLog parallel = new TCLog(root, store, 4);
+
+    assertEquals(50, parallel.getTestCount());
+    for (int i = 0; i < sequential.getTestCount(); i++) {
+      TCLogItem expected = sequential.getTCLogItem(i);
+      TCLogItem actual = parallel.getTCLogItem(i);
+      assertEquals(expected.getName(), actual.getName());
+      assertEquals(expected.getCaption(), actual.getCaption());
+      assertEquals(expected.getStartTimeInMilliSec(), actual.getStartTimeInMilliSec());
+      assertEquals(expected.getRunTime(), actual.getRunTime());
+    }
+  }
+
+  @Test
+  public void testParallelCreationFailure() throws Exception {
+    SpillingEntryStore store = new SpillingEntryStore(SpillingEntryStore.Backend.HEAP, Long.MAX_VALUE);
+    JSONObject root = createSuite(store, 10);
+    root.getJSONArray("children").getJSONObject(0).getJSONArray("children").getJSONObject(3).getJSONArray("providers").getJSONObject(0)
+      .put("href", "Missing.js");
+
+    try {
+      new TCLog(root, store, 4);
+      fail("Missing provider file not detected");
+    } catch (ConversionException e) {
+      assertEquals("Invalid TestComplete MHT file. No entry with 'missing.js' found.", e.getMessage());
+    }
+  }
+
+  /**
+   * Tests with the same name in different projects are all found, in document order
+   */
+  @Test
+  public void testDocumentOrder() throws Exception {
+    SpillingEntryStore store = new SpillingEntryStore(SpillingEntryStore.Backend.HEAP, Long.MAX_VALUE);
+    JSONObject root = new JSONObject("{\"name\":\"Suite\",\"children\":["
+      + "{\"name\":\"P1\",\"children\":[{\"name\":\"Script Test Log [B]\",\"id\":\"1\",\"children\":[]},"
+      + "{\"name\":\"Script Test Log [A]\",\"id\":\"2\",\"children\":[]}]},"
+      + "{\"name\":\"P2\",\"children\":[{\"name\":\"Script Test Log [B]\",\"id\":\"3\",\"children\":[]}]}]}");
+    TCLog log = new TCLog(root, store);
+
+    assertEquals(3, log.getTestCount());
+    assertEquals("1", log.getTCLogItem(0).getId());
+    assertEquals("2", log.getTCLogItem(1).getId());
+    assertEquals("3", log.getTCLogItem(2).getId());
+  }
+
+  @Test
+  public void testDeepNesting() throws Exception {
+    SpillingEntryStore store = new SpillingEntryStore(SpillingEntryStore.Backend.HEAP, Long.MAX_VALUE);
+    JSONObject root = new JSONObject();
+    JSONObject node = root;
+    for (int i = 0; i < 100000; i++) {
+      JSONObject child = new JSONObject();
+      child.put("name", "Folder " + i);
+      node.put("children", new JSONArray().put(child));
+      node = child;
+    }
+    node.put("children", new JSONArray().put(new JSONObject("{\"name\":\"Script Test Log [A]\",\"children\":[]}")));
+
+    TCLog log = new TCLog(root, store);
+    assertEquals(1, log.getTestCount());
+    assertTrue(TCLog.getReferencedEntryNames(root).isEmpty());
+  }
+
+  /**
+   * Items with the same call stack share it, the call stack is still available as maps
+   */
+  @Test
+  public void testSharedCallStacks() throws Exception {
+    SpillingEntryStore store = new SpillingEntryStore(SpillingEntryStore.Backend.HEAP, Long.MAX_VALUE);
+    String item = "{\"Message\":\"Error message\",\"TypeDescription\":\"Error\",\"CallStack\":{\"items\":["
+      + "{\"UnitName\":\"Unit1\",\"LineNo\":14,\"Test\":\"ST3\"},{\"LineNo\":2,\"Test\":\"KT1\"}]}}";
+    putEntry(store, "a.js", "_json_loaded(\"A.js\",{\"caption\":\"A\",\"items\":[" + item + "]})");
+    putEntry(store, "b.js", "_json_loaded(\"B.js\",{\"caption\":\"B\",\"items\":[" + item + "]})");
+
+    JSONObject root = new JSONObject("{\"name\":\"Suite\",\"children\":[{\"name\":\"Project\",\"children\":["
+      + "{\"name\":\"Script Test Log [A]\",\"id\":\"1\",\"status\":2,\"children\":[],\"providers\":[{\"href\":\"A.js\"}]},"
+      + "{\"name\":\"Script Test Log [B]\",\"id\":\"2\",\"status\":2,\"children\":[],\"providers\":[{\"href\":\"B.js\"}]}]}]}");
+    TCLog log = new TCLog(root, store);
+
+    TCLogItem a = log.getTCLogItem(0);
+    TCLogItem b = log.getTCLogItem(1);
+    assertEquals(2, a.getCallStackFrames().size());
+    assertSame(a.getCallStackFrames(), b.getCallStackFrames());
+    assertSame(a.getType(), b.getType());
+    assertEquals(a.getMessage(), b.getMessage());
+    assertEquals(new CallStackFrame("Unit1", 14, "ST3"), a.getCallStackFrames().get(0));
+    assertEquals(new CallStackFrame("", 2, "KT1"), a.getCallStackFrames().get(1));
+
+    @SuppressWarnings("deprecation")
+    List<Map<String, String>> callStack = a.getCallStack();
+    assertEquals("Unit1", callStack.get(0).get("Unit"));
+    assertEquals("14", callStack.get(0).get("Line"));
+    assertEquals("ST3", callStack.get(0).get("Test"));
+    assertEquals("", callStack.get(1).get("Unit"));
+  }
+
+  /**
+   * Date time strings of the log are reported in the format of the report, the test time in the layout of the log
+   */
+  @Test
+  public void testTimes() throws Exception {
+    SpillingEntryStore store = new SpillingEntryStore(SpillingEntryStore.Backend.HEAP, Long.MAX_VALUE);
+    putEntry(store, "project__projectlog.js", "_json_loaded(\"Project__ProjectLog.js\",{\"items\":[" + timing(1000, 1100) + "]})");
+    putEntry(store, "a.js", "_json_loaded(\"A.js\",{\"caption\":\"A\",\"items\":[{\"Message\":\"Message\","
+      + "\"Time\":{\"msec\":1484126787000,\"text\":\"11.01.2017 10:26:27\"}}]})");
+
+    JSONObject root = new JSONObject("{\"name\":\"Suite\",\"children\":[{\"name\":\"Project\","
+      + "\"providers\":[{\"href\":\"http://localhost/Project__ProjectLog.js\"}],"
+      + "\"children\":[{\"name\":\"Script Test Log [A]\",\"status\":0,\"children\":[],\"providers\":[{\"href\":\"A.js\"}]}]}]}");
+    TCLogItem item = new TCLog(root, store).getTCLogItem(0);
+    assertEquals("11.01.2017 10:26:27", item.getTestTime());
+    assertEquals(MyUtils.convertTc2DateTime("11.01.2017 10:26:27"), item.getTimeStamp());
+    assertEquals(MyUtils.convertTc2DateTime("11.01.2017 10:26:28"), item.getEndTime());
+
+    // Without parent the start time is the test time
+    TCLogItem orphan = new TCLogItem(null, root.getJSONArray("children").getJSONObject(0).getJSONArray("children").getJSONObject(0), store);
+    assertEquals("11.01.2017 10:26:27", orphan.getTimeStamp());
+    assertNull(orphan.getEndTime());
+  }
+}